@@ -1,84 +1,1113 @@
 //QN 2b - Closest Points
 
 
+// Brute force (bruteForceClosestPair, used for small inputs and as a reference):
 // Step 1: Initialize the minimum distance to maximum possible value.
 // Step 2: Create an array to store the result indices initialized with [-1, -1].
-// Step 3: Use nested loops to iterate through all pairs of points.
+// Step 3: Use nested loops to iterate through all pairs of points (each pair once, i < j).
 // Step 4: Calculate the Manhattan distance between each pair of points.
 // Step 5: If the calculated distance is smaller than the current minimum distance, update the minimum distance and result pair.
 // Step 6: If the distance is equal to the minimum distance, update the result pair if the current pair is lexicographically smaller.
 // Step 7: Continue the iteration until all pairs are checked.
 // Step 8: Return the result array containing the indices of the closest pair.
+//
+// O(n log n) engine (findClosestPair):
+// Step 1: Sort the points by x and find the smallest Manhattan distance d by divide and conquer:
+//         solve each half, then only compare points in the strip |x - middle x| < d, in y order,
+//         while their y values differ by less than d (a constant number of neighbours each).
+// Step 2: Find the lexicographically smallest pair (i, j) at distance exactly d:
+//         - d = 0: sort the points by (x, y); equal points are next to each other.
+//         - d > 0: put the points in a grid of d x d cells. A partner at distance d is at most
+//           one cell away, and a cell holds only a few points, so each point checks 9 cells.
+//         Going through i = 0, 1, 2, ... the first point with a partner gives the answer.
+// Time: O(n log n). Space: O(n).
+// Up to SMALL_INPUT_LIMIT points a brute force kernel written for SIMD (bruteForceKernel) is used instead.
+// findClosestPairParallel runs the same steps as fork/join tasks: the sort, the two halves of every
+// large divide and conquer range, and the search for the first i are split across threads.
+//
+// SpatialIndex: a KD-tree built once for repeated closest pair, k-nearest and within-distance queries.
+// DynamicClosestPair: insert / remove points and keep the closest pair up to date.
 
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ClosestPoints {
+    private static final int BRUTE_FORCE_LIMIT = 3;            // Recursion base case size
+    private static final int PARALLEL_THRESHOLD = 1 << 13;     // Ranges this small run sequentially
+    private static final int SMALL_INPUT_LIMIT = 1024;         // Up to this size the brute force kernel is faster
+
+    // Indices (i, j), i < j, of the closest pair by Manhattan distance; the lexicographically
+    // smallest pair if several are equally close. [-1, -1] if there are fewer than 2 points.
     public static int[] findClosestPair(int[] x_coords, int[] y_coords) {
+        return findClosestPair(x_coords, y_coords, null);
+    }
+
+    // Same answer as findClosestPair, computed on a fork/join pool with the given number of threads.
+    public static int[] findClosestPairParallel(int[] x_coords, int[] y_coords, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return findClosestPair(x_coords, y_coords, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Same answer as findClosestPair: with j running over all indices the lexicographically
+    // smallest pair still has i < j, so the ordered pair scan is not needed.
+    public static int[] closestPair(int[] x_coords, int[] y_coords) {
+        return findClosestPair(x_coords, y_coords);
+    }
+
+    // Both phases of the engine; pool == null runs every task on the calling thread.
+    private static int[] findClosestPair(int[] x_coords, int[] y_coords, ForkJoinPool pool) {
         int n = x_coords.length;
-        int minDistance = Integer.MAX_VALUE; // Initialize to maximum possible value
-        int[] result = new int[]{-1, -1};    // Array to store the result indices
+        if (n < 2) return new int[]{-1, -1};
+        if (n <= SMALL_INPUT_LIMIT) return bruteForceKernel(x_coords, y_coords);
+        return divideAndConquerClosestPair(x_coords, y_coords, pool);
+    }
+
+    // The O(n log n) engine on its own, whatever the input size (n >= 2).
+    static int[] divideAndConquerClosestPair(int[] x_coords, int[] y_coords) {
+        return divideAndConquerClosestPair(x_coords, y_coords, null);
+    }
+
+    private static int[] divideAndConquerClosestPair(int[] x_coords, int[] y_coords, ForkJoinPool pool) {
+        long minDistance = minDistance(x_coords, y_coords, pool);
+        return minDistance == 0
+                ? firstDuplicatePair(x_coords, y_coords, pool)
+                : firstPairAtDistance(x_coords, y_coords, minDistance, pool);
+    }
+
+    // Runs a task in the pool, or directly when there is none (the task then never forks).
+    private static <T> T run(ForkJoinPool pool, ForkJoinTask<T> task) {
+        return pool == null ? task.invoke() : pool.invoke(task);
+    }
 
-        // Iterate over all possible pairs of points
+    // O(n^2) reference: every pair once, keeping the closest and lexicographically smallest.
+    public static int[] bruteForceClosestPair(int[] x_coords, int[] y_coords) {
+        int n = x_coords.length;
+        long minDistance = Long.MAX_VALUE; // Initialize to maximum possible value
+        int[] result = new int[]{-1, -1};  // Array to store the result indices
+
+        // Iterate over all possible pairs of points; i ascending and j ascending means the
+        // first pair found at a distance is already the lexicographically smallest one.
         for (int i = 0; i < n; i++) {
             for (int j = i + 1; j < n; j++) {
                 // Calculate Manhattan distance
-                int distance = Math.abs(x_coords[i] - x_coords[j]) + 
-                               Math.abs(y_coords[i] - y_coords[j]);
-                
-                // Update if this distance is smaller
+                long distance = distance(x_coords, y_coords, i, j);
+
+                // Update only if this distance is strictly smaller
                 if (distance < minDistance) {
                     minDistance = distance;
                     result[0] = i;
                     result[1] = j;
-                } 
-                // If distance is equal, choose lexicographically smaller pair
-                else if (distance == minDistance) {
-                    if (i < result[0] || (i == result[0] && j < result[1])) {
+                }
+            }
+        }
+
+        return result;
+    }
+
+    // Brute force written as a kernel. For each row i, one loop with no branches ORs together
+    // (distance(i, j) - best) over all j > i; the result is negative only if some distance beats
+    // the best so far. The JIT turns that loop into SIMD instructions. Only then is the row scanned
+    // again, in order, for its smallest distance and the first j reaching it. Rows go in order and
+    // only strictly smaller distances win, so the pair found is the lexicographically smallest.
+    // Needs every distance to fit in an int (the subtraction then cannot overflow); otherwise this
+    // falls back to the plain brute force.
+    static int[] bruteForceKernel(int[] x_coords, int[] y_coords) {
+        int n = x_coords.length;
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x_coords[i]);
+            maxX = Math.max(maxX, x_coords[i]);
+            minY = Math.min(minY, y_coords[i]);
+            maxY = Math.max(maxY, y_coords[i]);
+        }
+        if (((long) maxX - minX) + ((long) maxY - minY) > Integer.MAX_VALUE) return bruteForceClosestPair(x_coords, y_coords);
+
+        int best = Integer.MAX_VALUE;
+        int[] result = new int[]{-1, -1};
+        for (int i = 0; i < n - 1; i++) {
+            int x = x_coords[i], y = y_coords[i];
+            int beaten = 0; // Sign bit set if some j has a distance below 'best'
+            for (int j = i + 1; j < n; j++) {
+                beaten |= Math.abs(x - x_coords[j]) + Math.abs(y - y_coords[j]) - best;
+            }
+            if (beaten < 0) {
+                for (int j = i + 1; j < n; j++) {
+                    int distance = Math.abs(x - x_coords[j]) + Math.abs(y - y_coords[j]);
+                    if (distance < best) {
+                        best = distance;
                         result[0] = i;
                         result[1] = j;
                     }
                 }
             }
         }
-
         return result;
     }
 
-    public static int[] closestPair(int[] x_coords, int[] y_coords) {
+    // Manhattan distance between points a and b (long, so it cannot overflow).
+    static long distance(int[] x_coords, int[] y_coords, int a, int b) {
+        return Math.abs((long) x_coords[a] - x_coords[b]) + Math.abs((long) y_coords[a] - y_coords[b]);
+    }
+
+    // Smallest Manhattan distance between two different points (n >= 2).
+    static long minDistance(int[] x_coords, int[] y_coords) {
+        return minDistance(x_coords, y_coords, null);
+    }
+
+    private static long minDistance(int[] x_coords, int[] y_coords, ForkJoinPool pool) {
         int n = x_coords.length;
-        int minDistance = Integer.MAX_VALUE;
-        int[] bestPair = new int[2];
-        bestPair[0] = -1;
-        bestPair[1] = -1;
-        
+
+        // Sort by x (ties by index)
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = x_coords[i];
+        int[] order = sortedByKey(keys, pool);
+
+        int[] xs = new int[n];
+        int[] ys = new int[n];
         for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (i == j) continue;
-                int currentDistance = Math.abs(x_coords[i] - x_coords[j]) + Math.abs(y_coords[i] - y_coords[j]);
-                if (currentDistance < minDistance) {
-                    minDistance = currentDistance;
-                    bestPair[0] = i;
-                    bestPair[1] = j;
-                } else if (currentDistance == minDistance) {
-                    // Check if (i,j) is lexicographically smaller than the current best pair
-                    if (i < bestPair[0] || (i == bestPair[0] && j < bestPair[1])) {
-                        bestPair[0] = i;
-                        bestPair[1] = j;
+            xs[i] = x_coords[order[i]];
+            ys[i] = y_coords[order[i]];
+        }
+        return run(pool, new ClosestTask(xs, ys, new int[n], new int[n], 0, n, pool != null));
+    }
+
+    // Divide and conquer over xs/ys[lo, hi), sorted by x on entry. On return the range is
+    // sorted by y (merge sort), which the caller's strip step needs. tmpX/tmpY are only used
+    // in [lo, hi), so disjoint ranges can be solved at the same time.
+    private static long closest(int[] xs, int[] ys, int lo, int hi, int[] tmpX, int[] tmpY) {
+        if (hi - lo <= BRUTE_FORCE_LIMIT) {
+            long best = Long.MAX_VALUE;
+            for (int i = lo; i < hi; i++) {
+                for (int j = i + 1; j < hi; j++) {
+                    best = Math.min(best, Math.abs((long) xs[i] - xs[j]) + Math.abs((long) ys[i] - ys[j]));
+                }
+            }
+            sortByY(xs, ys, lo, hi);
+            return best;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        long midX = xs[mid]; // Dividing line, read before the halves are re-sorted by y
+        long best = Math.min(closest(xs, ys, lo, mid, tmpX, tmpY), closest(xs, ys, mid, hi, tmpX, tmpY));
+        return mergeAndCheckStrip(xs, ys, lo, mid, hi, midX, best, tmpX, tmpY);
+    }
+
+    // Merges the two solved halves by y and checks the pairs that cross the dividing line.
+    private static long mergeAndCheckStrip(int[] xs, int[] ys, int lo, int mid, int hi, long midX, long best,
+                                           int[] tmpX, int[] tmpY) {
+        mergeByY(xs, ys, lo, mid, hi, tmpX, tmpY);
+        if (best == 0) return 0;
+
+        // Strip: points closer than 'best' to the dividing line, already in y order.
+        int end = lo;
+        for (int i = lo; i < hi; i++) {
+            if (Math.abs(xs[i] - midX) < best) {
+                tmpX[end] = xs[i];
+                tmpY[end] = ys[i];
+                end++;
+            }
+        }
+        for (int i = lo; i < end; i++) {
+            for (int j = i + 1; j < end && (long) tmpY[j] - tmpY[i] < best; j++) {
+                best = Math.min(best, Math.abs((long) tmpX[i] - tmpX[j]) + ((long) tmpY[j] - tmpY[i]));
+            }
+        }
+        return best;
+    }
+
+    // Parallel divide and conquer: the halves are solved concurrently, then merged as above.
+    private static final class ClosestTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final int[] xs, ys, tmpX, tmpY;
+        private final int lo, hi;
+        private final boolean parallel;
+
+        ClosestTask(int[] xs, int[] ys, int[] tmpX, int[] tmpY, int lo, int hi, boolean parallel) {
+            this.xs = xs;
+            this.ys = ys;
+            this.tmpX = tmpX;
+            this.tmpY = tmpY;
+            this.lo = lo;
+            this.hi = hi;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Long compute() {
+            if (!parallel || hi - lo <= PARALLEL_THRESHOLD) return closest(xs, ys, lo, hi, tmpX, tmpY);
+            int mid = (lo + hi) >>> 1;
+            long midX = xs[mid];
+            ClosestTask left = new ClosestTask(xs, ys, tmpX, tmpY, lo, mid, true);
+            left.fork();
+            long best = new ClosestTask(xs, ys, tmpX, tmpY, mid, hi, true).compute();
+            best = Math.min(best, left.join());
+            return mergeAndCheckStrip(xs, ys, lo, mid, hi, midX, best, tmpX, tmpY);
+        }
+    }
+
+    // Insertion sort of a small range by y.
+    private static void sortByY(int[] xs, int[] ys, int lo, int hi) {
+        for (int i = lo + 1; i < hi; i++) {
+            int x = xs[i];
+            int y = ys[i];
+            int j = i - 1;
+            while (j >= lo && ys[j] > y) {
+                xs[j + 1] = xs[j];
+                ys[j + 1] = ys[j];
+                j--;
+            }
+            xs[j + 1] = x;
+            ys[j + 1] = y;
+        }
+    }
+
+    // Merge the y-sorted ranges [lo, mid) and [mid, hi).
+    private static void mergeByY(int[] xs, int[] ys, int lo, int mid, int hi, int[] tmpX, int[] tmpY) {
+        int i = lo, j = mid, k = lo;
+        while (i < mid || j < hi) {
+            if (j >= hi || (i < mid && ys[i] <= ys[j])) {
+                tmpX[k] = xs[i];
+                tmpY[k++] = ys[i++];
+            } else {
+                tmpX[k] = xs[j];
+                tmpY[k++] = ys[j++];
+            }
+        }
+        System.arraycopy(tmpX, lo, xs, lo, hi - lo);
+        System.arraycopy(tmpY, lo, ys, lo, hi - lo);
+    }
+
+    // Smallest (i, j) with identical points, for a minimum distance of 0.
+    private static int[] firstDuplicatePair(int[] x_coords, int[] y_coords, ForkJoinPool pool) {
+        int n = x_coords.length;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = (long) x_coords[i] << 32 | (y_coords[i] & 0xFFFFFFFFL);
+        int[] order = sortedByKey(keys, pool);
+
+        // Equal points form runs; within a run the indices are ascending (stable sort).
+        int[] result = new int[]{-1, -1};
+        for (int k = 0; k + 1 < n; k++) {
+            if (keys[order[k]] == keys[order[k + 1]] && (result[0] < 0 || order[k] < result[0])) {
+                result[0] = order[k];
+                result[1] = order[k + 1];
+            }
+            while (k + 1 < n && keys[order[k]] == keys[order[k + 1]]) k++; // Skip the rest of the run
+        }
+        return result;
+    }
+
+    // Smallest (i, j) with distance exactly d > 0, where d is the minimum distance.
+    private static int[] firstPairAtDistance(int[] x_coords, int[] y_coords, long d, ForkJoinPool pool) {
+        Grid grid = new Grid(x_coords, y_coords, d, pool);
+        AtomicLong best = new AtomicLong(Long.MAX_VALUE); // Smallest pair found, packed as i << 32 | j
+        run(pool, new FirstPairTask(grid, best, 0, x_coords.length, pool != null));
+        long pair = best.get();
+        if (pair == Long.MAX_VALUE) return new int[]{-1, -1}; // Not reached: the minimum distance is always attained
+        return new int[]{(int) (pair >>> 32), (int) pair};
+    }
+
+    // Points bucketed into d x d cells; both cell numbers are below 2^32, so (cx, cy) packs into one long.
+    private static final class Grid {
+        private final int[] x_coords, y_coords;
+        private final long d;
+        private final long[] cells;        // Cell of each point
+        private final int[] order;         // Point indices sorted by cell
+        private final long[] sortedCells;  // cells[order[k]]
+
+        Grid(int[] x_coords, int[] y_coords, long d, ForkJoinPool pool) {
+            this.x_coords = x_coords;
+            this.y_coords = y_coords;
+            this.d = d;
+            int n = x_coords.length;
+            long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, x_coords[i]);
+                minY = Math.min(minY, y_coords[i]);
+            }
+            cells = new long[n];
+            for (int i = 0; i < n; i++) {
+                cells[i] = ((x_coords[i] - minX) / d) << 32 | ((y_coords[i] - minY) / d);
+            }
+            order = sortedByKey(cells, pool);
+            sortedCells = new long[n];
+            for (int k = 0; k < n; k++) sortedCells[k] = cells[order[k]];
+        }
+
+        // Smallest j > i at distance exactly d from point i, or -1.
+        int partner(int i) {
+            long cx = cells[i] >>> 32;
+            long cy = cells[i] & 0xFFFFFFFFL;
+            int bestJ = -1;
+            // A partner at distance d differs by at most d in x and y: at most one cell away.
+            for (long nx = cx - 1; nx <= cx + 1; nx++) {
+                for (long ny = cy - 1; ny <= cy + 1; ny++) {
+                    if (nx < 0 || ny < 0 || nx > 0xFFFFFFFFL || ny > 0xFFFFFFFFL) continue;
+                    long cell = nx << 32 | ny;
+                    for (int k = lowerBound(sortedCells, cell); k < sortedCells.length && sortedCells[k] == cell; k++) {
+                        int j = order[k];
+                        if (j > i && (bestJ < 0 || j < bestJ) && distance(x_coords, y_coords, i, j) == d) bestJ = j;
                     }
                 }
             }
+            return bestJ;
+        }
+    }
+
+    // Looks for the first i in [lo, hi) with a partner. Going through i = 0, 1, 2, ... the first
+    // point with a partner gives the answer; ranges past an already found i are skipped.
+    private static final class FirstPairTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Grid grid;
+        private final AtomicLong best;
+        private final int lo, hi;
+        private final boolean parallel;
+
+        FirstPairTask(Grid grid, AtomicLong best, int lo, int hi, boolean parallel) {
+            this.grid = grid;
+            this.best = best;
+            this.lo = lo;
+            this.hi = hi;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected void compute() {
+            if (parallel && hi - lo > PARALLEL_THRESHOLD) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new FirstPairTask(grid, best, lo, mid, true), new FirstPairTask(grid, best, mid, hi, true));
+                return;
+            }
+            for (int i = lo; i < hi && i < (best.get() >>> 32); i++) {
+                int j = grid.partner(i);
+                if (j >= 0) {
+                    long pair = (long) i << 32 | j;
+                    best.accumulateAndGet(pair, Math::min);
+                    return;
+                }
+            }
         }
-        return bestPair;
+    }
+
+    // Indices 0..n-1 stably sorted by keys[index] (merge sort on primitives, no boxing).
+    static int[] sortedByKey(long[] keys) {
+        return sortedByKey(keys, null);
+    }
+
+    private static int[] sortedByKey(long[] keys, ForkJoinPool pool) {
+        int n = keys.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        run(pool, new SortTask(keys, order, new int[n], 0, n, pool != null));
+        return order;
+    }
+
+    // Merge sort of order[lo, hi) by key: halves in parallel, bottom-up below the threshold.
+    private static final class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final long[] keys;
+        private final int[] order, tmp;
+        private final int lo, hi;
+        private final boolean parallel;
+
+        SortTask(long[] keys, int[] order, int[] tmp, int lo, int hi, boolean parallel) {
+            this.keys = keys;
+            this.order = order;
+            this.tmp = tmp;
+            this.lo = lo;
+            this.hi = hi;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected void compute() {
+            if (parallel && hi - lo > PARALLEL_THRESHOLD) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new SortTask(keys, order, tmp, lo, mid, true), new SortTask(keys, order, tmp, mid, hi, true));
+                merge(lo, mid, hi);
+                return;
+            }
+            for (int width = 1; width < hi - lo; width <<= 1) {
+                for (int start = lo; start < hi - width; start += 2 * width) {
+                    merge(start, start + width, Math.min(start + 2 * width, hi));
+                }
+            }
+        }
+
+        // Stable merge of the sorted runs [from, mid) and [mid, to).
+        private void merge(int from, int mid, int to) {
+            int i = from, j = mid, k = from;
+            while (i < mid && j < to) tmp[k++] = keys[order[j]] < keys[order[i]] ? order[j++] : order[i++];
+            while (i < mid) tmp[k++] = order[i++];
+            while (j < to) tmp[k++] = order[j++];
+            System.arraycopy(tmp, from, order, from, to - from);
+        }
+    }
+
+    // First position in a sorted array whose value is >= key.
+    private static int lowerBound(long[] sorted, long key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Spatial index built once over a fixed set of points, for many queries.
+    // Implicit KD-tree: the points are stored in tree order in primitive arrays; the node of a
+    // range [lo, hi) is its middle element, everything before it is <= on the split axis
+    // (x at even depths, y at odd depths) and everything after it is >=.
+    // Build: O(n log n). Nearest neighbours / range queries only visit the branches whose
+    // splitting line is within the search distance.
+    public static final class SpatialIndex {
+        private final int[] x_coords;   // Copy of the input, indexed by point index
+        private final int[] y_coords;
+        private final int[] treeX;      // Points in tree order
+        private final int[] treeY;
+        private final int[] treeIndex;  // Original index of each tree slot
+        private volatile int[] closestPair; // Computed on first request
+
+        public SpatialIndex(int[] x_coords, int[] y_coords) {
+            if (x_coords.length != y_coords.length) throw new IllegalArgumentException("Coordinate arrays differ in length");
+            int n = x_coords.length;
+            this.x_coords = x_coords.clone();
+            this.y_coords = y_coords.clone();
+            this.treeX = x_coords.clone();
+            this.treeY = y_coords.clone();
+            this.treeIndex = new int[n];
+            for (int i = 0; i < n; i++) treeIndex[i] = i;
+            build(0, n, 0);
+        }
+
+        public int size() {
+            return x_coords.length;
+        }
+
+        // Same answer as ClosestPoints.findClosestPair on the indexed points.
+        public int[] closestPair() {
+            int[] pair = closestPair;
+            if (pair == null) closestPair = pair = findClosestPair(x_coords, y_coords);
+            return pair.clone();
+        }
+
+        // Indices of the k points nearest to (x, y), closest first; equal distances by index.
+        public int[] nearest(int x, int y, int k) {
+            k = Math.min(k, size());
+            if (k <= 0) return new int[0];
+            long[] heapDistance = new long[k]; // Max-heap of the best k so far, worst at the top
+            int[] heapIndex = new int[k];
+            int count = searchNearest(0, size(), 0, x, y, k, heapDistance, heapIndex, 0);
+
+            // Pop the worst repeatedly to get the neighbours in order.
+            int[] result = new int[count];
+            for (int i = count - 1; i >= 0; i--) {
+                result[i] = heapIndex[0];
+                heapDistance[0] = heapDistance[i];
+                heapIndex[0] = heapIndex[i];
+                siftDown(heapDistance, heapIndex, i, 0);
+            }
+            return result;
+        }
+
+        // All pairs (i, j), i < j, at Manhattan distance <= d, in lexicographic order.
+        public int[][] pairsWithin(long d) {
+            int n = size();
+            int[] found = new int[16];
+            int[][] pairs = new int[16][];
+            int pairCount = 0;
+            for (int i = 0; i < n; i++) {
+                int count = searchWithin(0, n, 0, i, d, found, 0);
+                if (count > found.length) { // Buffer was too small: grow it and search again
+                    found = new int[Integer.highestOneBit(count) << 1];
+                    count = searchWithin(0, n, 0, i, d, found, 0);
+                }
+                Arrays.sort(found, 0, count);
+                for (int k = 0; k < count; k++) {
+                    if (pairCount == pairs.length) pairs = Arrays.copyOf(pairs, pairCount * 2);
+                    pairs[pairCount++] = new int[]{i, found[k]};
+                }
+            }
+            return Arrays.copyOf(pairs, pairCount);
+        }
+
+        // Quickselect the median of [lo, hi) on the axis for this depth, then recurse.
+        private void build(int lo, int hi, int depth) {
+            if (hi - lo <= 1) return;
+            int mid = (lo + hi) >>> 1;
+            int[] axis = depth % 2 == 0 ? treeX : treeY;
+            int left = lo, right = hi - 1;
+            while (left < right) {
+                int pivot = axis[(left + right) >>> 1];
+                int i = left, j = right;
+                while (i <= j) {
+                    while (axis[i] < pivot) i++;
+                    while (axis[j] > pivot) j--;
+                    if (i <= j) swap(i++, j--);
+                }
+                if (mid <= j) right = j;
+                else if (mid >= i) left = i;
+                else break;
+            }
+            build(lo, mid, depth + 1);
+            build(mid + 1, hi, depth + 1);
+        }
+
+        private void swap(int a, int b) {
+            int t = treeX[a]; treeX[a] = treeX[b]; treeX[b] = t;
+            t = treeY[a]; treeY[a] = treeY[b]; treeY[b] = t;
+            t = treeIndex[a]; treeIndex[a] = treeIndex[b]; treeIndex[b] = t;
+        }
+
+        // Adds the k nearest of [lo, hi) to the heap; returns the new heap size.
+        private int searchNearest(int lo, int hi, int depth, int x, int y, int k,
+                                  long[] heapDistance, int[] heapIndex, int count) {
+            if (lo >= hi) return count;
+            int mid = (lo + hi) >>> 1;
+            long distance = Math.abs((long) x - treeX[mid]) + Math.abs((long) y - treeY[mid]);
+            int index = treeIndex[mid];
+            if (count < k) {
+                // Heap not full yet: append and sift up
+                int i = count++;
+                while (i > 0 && worse(distance, index, heapDistance[(i - 1) / 2], heapIndex[(i - 1) / 2])) {
+                    heapDistance[i] = heapDistance[(i - 1) / 2];
+                    heapIndex[i] = heapIndex[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heapDistance[i] = distance;
+                heapIndex[i] = index;
+            } else if (worse(heapDistance[0], heapIndex[0], distance, index)) {
+                // Better than the current worst: replace the top
+                heapDistance[0] = distance;
+                heapIndex[0] = index;
+                siftDown(heapDistance, heapIndex, count, 0);
+            }
+
+            long diff = depth % 2 == 0 ? (long) x - treeX[mid] : (long) y - treeY[mid];
+            // Near side first, so the far side can usually be pruned
+            if (diff < 0) count = searchNearest(lo, mid, depth + 1, x, y, k, heapDistance, heapIndex, count);
+            else count = searchNearest(mid + 1, hi, depth + 1, x, y, k, heapDistance, heapIndex, count);
+            // Far side only if a point there could still be as close as the current worst
+            if (count < k || Math.abs(diff) <= heapDistance[0]) {
+                if (diff < 0) count = searchNearest(mid + 1, hi, depth + 1, x, y, k, heapDistance, heapIndex, count);
+                else count = searchNearest(lo, mid, depth + 1, x, y, k, heapDistance, heapIndex, count);
+            }
+            return count;
+        }
+
+        // Collects the indices j > i within distance d of point i; returns how many were found
+        // (which may exceed found.length, in which case the caller retries with a bigger buffer).
+        private int searchWithin(int lo, int hi, int depth, int i, long d, int[] found, int count) {
+            if (lo >= hi) return count;
+            int mid = (lo + hi) >>> 1;
+            int x = x_coords[i], y = y_coords[i];
+            int j = treeIndex[mid];
+            if (j > i && Math.abs((long) x - treeX[mid]) + Math.abs((long) y - treeY[mid]) <= d) {
+                if (count < found.length) found[count] = j;
+                count++;
+            }
+            long diff = depth % 2 == 0 ? (long) x - treeX[mid] : (long) y - treeY[mid];
+            if (diff <= d) count = searchWithin(lo, mid, depth + 1, i, d, found, count);      // Left side has values <= split
+            if (-diff <= d) count = searchWithin(mid + 1, hi, depth + 1, i, d, found, count); // Right side has values >= split
+            return count;
+        }
+
+        // Ordering for neighbours: farther is worse, and on equal distance the larger index is worse.
+        private static boolean worse(long distanceA, int indexA, long distanceB, int indexB) {
+            return distanceA > distanceB || (distanceA == distanceB && indexA > indexB);
+        }
+
+        private static void siftDown(long[] heapDistance, int[] heapIndex, int size, int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) return;
+                if (child + 1 < size && worse(heapDistance[child + 1], heapIndex[child + 1], heapDistance[child], heapIndex[child])) child++;
+                if (!worse(heapDistance[child], heapIndex[child], heapDistance[i], heapIndex[i])) return;
+                long d = heapDistance[i]; heapDistance[i] = heapDistance[child]; heapDistance[child] = d;
+                int t = heapIndex[i]; heapIndex[i] = heapIndex[child]; heapIndex[child] = t;
+                i = child;
+            }
+        }
+    }
+
+    // Closest pair of a changing set of points. insert hands out the indices 0, 1, 2, ... in order,
+    // like positions in x_coords/y_coords, and removed indices are not reused. closestPair() gives
+    // the same answer as findClosestPair over the points still present.
+    //
+    // Points at the same location share a Site, whose index is its smallest point index. Every site
+    // keeps its nearest other site (smaller distance first, then smaller index). That is enough:
+    // the lexicographically smallest closest pair is either two points of one site, or the site of i
+    // and its nearest site. The candidate pair of every site is kept in a sorted set.
+    // An update only changes the nearest site of a few sites:
+    // - insert: the sites for which the new site is closer, found with a reverse query (each KD-tree
+    //   node stores the largest nearest distance of the sites below it);
+    // - remove: the sites whose nearest site was the removed one.
+    // The sites are stored in KD-trees of sizes 1, 2, 4, ... (logarithmic method: an insert merges
+    // the full levels below it); a removal only marks its site dead, and once half of the stored sites
+    // are dead everything is rebuilt.
+    // Update: O(log^2 n) amortized plus a few KD-tree searches, for points in general position.
+    public static final class DynamicClosestPair {
+        private int[] x_coords = new int[16];
+        private int[] y_coords = new int[16];
+        private boolean[] present = new boolean[16];
+        private int next;    // Next index to hand out
+        private int size;    // Points currently present
+        private long serial; // Number of sites created, used as the final tie-break between sites
+        private final HashMap<Long, Site> sitesByLocation = new HashMap<>();
+        private final TreeSet<Site> candidates = new TreeSet<>(Site.BY_CANDIDATE);
+        private final ArrayList<SiteTree> levels = new ArrayList<>(); // Tree at level i, or null
+        private int liveSites, deadSites; // Live and dead sites stored in the trees
+
+        // Adds a point and returns its index.
+        public int insert(int x, int y) {
+            int index = next++;
+            if (index == x_coords.length) {
+                x_coords = Arrays.copyOf(x_coords, index * 2);
+                y_coords = Arrays.copyOf(y_coords, index * 2);
+                present = Arrays.copyOf(present, index * 2);
+            }
+            x_coords[index] = x;
+            y_coords[index] = y;
+            present[index] = true;
+            size++;
+
+            Site site = sitesByLocation.get(location(x, y));
+            if (site == null) {
+                TreeSet<Integer> ids = new TreeSet<>();
+                ids.add(index);
+                addSite(new Site(x, y, ids, serial++));
+            } else {
+                candidates.remove(site);
+                site.ids.add(index); // Largest index so far, so the site's index stays the same
+                refreshCandidate(site);
+            }
+            return index;
+        }
+
+        // Removes the point with this index.
+        public void remove(int index) {
+            if (index < 0 || index >= next || !present[index]) throw new IllegalArgumentException("No point with index " + index);
+            present[index] = false;
+            size--;
+
+            Site site = sitesByLocation.get(location(x_coords[index], y_coords[index]));
+            if (site.ids.size() == 1) {
+                removeSite(site);
+            } else if (index == site.index()) {
+                // The site's index changes, which can change the nearest site of other sites:
+                // replace it by a new site holding the remaining points.
+                removeSite(site);
+                site.ids.remove(index);
+                addSite(new Site(site.x, site.y, site.ids, serial++));
+            } else {
+                candidates.remove(site);
+                site.ids.remove(index);
+                refreshCandidate(site);
+            }
+        }
+
+        // Same answer as findClosestPair over the present points: [-1, -1] if there are fewer than 2.
+        public int[] closestPair() {
+            if (candidates.isEmpty()) return new int[]{-1, -1};
+            Site best = candidates.first();
+            if (best.candidateDistance == Long.MAX_VALUE) return new int[]{-1, -1};
+            return new int[]{best.candidateI, best.candidateJ};
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private static long location(int x, int y) {
+            return (long) x << 32 | (y & 0xFFFFFFFFL);
+        }
+
+        private void addSite(Site site) {
+            sitesByLocation.put(location(site.x, site.y), site);
+            assignNearest(site);
+
+            // Sites for which the new site is closer than their current nearest site
+            ArrayList<Site> closer = new ArrayList<>();
+            for (SiteTree tree : levels) {
+                if (tree != null) tree.closerTo(site, 0, tree.sites.length, closer);
+            }
+            for (Site other : closer) {
+                candidates.remove(other);
+                if (other.nearest != null) other.nearest.nearestOf.remove(other);
+                other.nearest = site;
+                other.nearestDistance = siteDistance(other, site);
+                site.nearestOf.add(other);
+                other.tree.update(other.slot);
+                refreshCandidate(other);
+            }
+
+            // Logarithmic method: merge the full levels and the new site into the first free level
+            ArrayList<Site> merged = new ArrayList<>();
+            merged.add(site);
+            int level = 0;
+            while (level < levels.size() && levels.get(level) != null) {
+                SiteTree tree = levels.get(level);
+                tree.collectLive(merged);
+                deadSites -= tree.dead;
+                levels.set(level++, null);
+            }
+            if (level == levels.size()) levels.add(null);
+            levels.set(level, new SiteTree(merged));
+            liveSites++;
+            refreshCandidate(site);
+        }
+
+        private void removeSite(Site site) {
+            sitesByLocation.remove(location(site.x, site.y));
+            candidates.remove(site);
+            site.alive = false;
+            site.tree.dead++;
+            site.tree.update(site.slot);
+            liveSites--;
+            deadSites++;
+            if (site.nearest != null) site.nearest.nearestOf.remove(site);
+
+            // Sites that had this one as their nearest site look again
+            for (Site other : site.nearestOf) {
+                candidates.remove(other);
+                assignNearest(other);
+                other.tree.update(other.slot);
+                refreshCandidate(other);
+            }
+            site.nearestOf.clear();
+
+            if (deadSites > liveSites) {
+                ArrayList<Site> live = new ArrayList<>();
+                for (SiteTree tree : levels) {
+                    if (tree != null) tree.collectLive(live);
+                }
+                levels.clear();
+                deadSites = 0;
+                if (!live.isEmpty()) {
+                    int level = 31 - Integer.numberOfLeadingZeros(live.size());
+                    while (levels.size() < level) levels.add(null);
+                    levels.add(new SiteTree(live));
+                }
+            }
+        }
+
+        // Finds the nearest live site of 'site' in the trees and links the two.
+        private void assignNearest(Site site) {
+            Site[] best = new Site[1];
+            long[] bestDistance = {Long.MAX_VALUE};
+            for (SiteTree tree : levels) {
+                if (tree != null) tree.nearest(site, 0, tree.sites.length, 0, best, bestDistance);
+            }
+            site.nearest = best[0];
+            site.nearestDistance = bestDistance[0];
+            if (best[0] != null) best[0].nearestOf.add(site);
+        }
+
+        // Recomputes the site's candidate pair and puts it (back) in the sorted set.
+        private void refreshCandidate(Site site) {
+            if (site.ids.size() >= 2) {
+                // Two points at the same location: distance 0, the two smallest indices
+                Iterator<Integer> it = site.ids.iterator();
+                site.candidateDistance = 0;
+                site.candidateI = it.next();
+                site.candidateJ = it.next();
+            } else if (site.nearest != null) {
+                int a = site.index(), b = site.nearest.index();
+                site.candidateDistance = site.nearestDistance;
+                site.candidateI = Math.min(a, b);
+                site.candidateJ = Math.max(a, b);
+            } else {
+                site.candidateDistance = Long.MAX_VALUE;
+                site.candidateI = -1;
+                site.candidateJ = -1;
+            }
+            candidates.add(site);
+        }
+
+        private static long siteDistance(Site a, Site b) {
+            return Math.abs((long) a.x - b.x) + Math.abs((long) a.y - b.y);
+        }
+
+        // (distanceA, indexA) comes before (distanceB, indexB)
+        private static boolean closer(long distanceA, int indexA, long distanceB, int indexB) {
+            return distanceA < distanceB || (distanceA == distanceB && indexA < indexB);
+        }
+
+        // All points at one location.
+        private static final class Site {
+            static final Comparator<Site> BY_CANDIDATE = Comparator.comparingLong((Site s) -> s.candidateDistance)
+                    .thenComparingInt(s -> s.candidateI)
+                    .thenComparingInt(s -> s.candidateJ)
+                    .thenComparingLong(s -> s.serial);
+
+            final int x, y;
+            final TreeSet<Integer> ids;                       // Indices of the points here
+            final long serial;
+            final HashSet<Site> nearestOf = new HashSet<>(); // Sites whose nearest site is this one
+            Site nearest;                                    // Nearest other live site, or null
+            long nearestDistance = Long.MAX_VALUE;
+            long candidateDistance;                          // Best pair involving this site
+            int candidateI, candidateJ;
+            SiteTree tree;                                   // Where the site is stored
+            int slot;
+            boolean alive = true;
+
+            Site(int x, int y, TreeSet<Integer> ids, long serial) {
+                this.x = x;
+                this.y = y;
+                this.ids = ids;
+                this.serial = serial;
+            }
+
+            int index() {
+                return ids.first();
+            }
+
+            // Distance a search must cover to find sites that would become this site's nearest.
+            long radius() {
+                return alive ? nearestDistance : -1;
+            }
+        }
+
+        // Static KD-tree over sites, laid out like SpatialIndex, with a bounding box and the
+        // largest radius of the subtree stored at each node.
+        private static final class SiteTree {
+            private static final Comparator<Site> BY_X = Comparator.comparingInt(s -> s.x);
+            private static final Comparator<Site> BY_Y = Comparator.comparingInt(s -> s.y);
+
+            final Site[] sites;
+            final int[] minX, maxX, minY, maxY;
+            final long[] maxRadius;
+            int dead;
+
+            SiteTree(List<Site> list) {
+                sites = list.toArray(new Site[0]);
+                int n = sites.length;
+                minX = new int[n];
+                maxX = new int[n];
+                minY = new int[n];
+                maxY = new int[n];
+                maxRadius = new long[n];
+                build(0, n, 0);
+                for (int i = 0; i < n; i++) {
+                    sites[i].tree = this;
+                    sites[i].slot = i;
+                }
+            }
+
+            private void build(int lo, int hi, int depth) {
+                if (lo >= hi) return;
+                Arrays.sort(sites, lo, hi, depth % 2 == 0 ? BY_X : BY_Y);
+                int mid = (lo + hi) >>> 1;
+                build(lo, mid, depth + 1);
+                build(mid + 1, hi, depth + 1);
+                Site site = sites[mid];
+                minX[mid] = maxX[mid] = site.x;
+                minY[mid] = maxY[mid] = site.y;
+                for (int child : new int[]{lo < mid ? (lo + mid) >>> 1 : -1, mid + 1 < hi ? (mid + 1 + hi) >>> 1 : -1}) {
+                    if (child < 0) continue;
+                    minX[mid] = Math.min(minX[mid], minX[child]);
+                    maxX[mid] = Math.max(maxX[mid], maxX[child]);
+                    minY[mid] = Math.min(minY[mid], minY[child]);
+                    maxY[mid] = Math.max(maxY[mid], maxY[child]);
+                }
+                summarize(lo, hi);
+            }
+
+            // Recomputes maxRadius of the node for [lo, hi) from its site and children.
+            private void summarize(int lo, int hi) {
+                int mid = (lo + hi) >>> 1;
+                long radius = sites[mid].radius();
+                if (lo < mid) radius = Math.max(radius, maxRadius[(lo + mid) >>> 1]);
+                if (mid + 1 < hi) radius = Math.max(radius, maxRadius[(mid + 1 + hi) >>> 1]);
+                maxRadius[mid] = radius;
+            }
+
+            // The radius of the site at 'slot' changed: fix maxRadius on the path up to the root.
+            void update(int slot) {
+                int[] los = new int[64], his = new int[64];
+                int depth = 0, lo = 0, hi = sites.length;
+                while (true) {
+                    los[depth] = lo;
+                    his[depth++] = hi;
+                    int mid = (lo + hi) >>> 1;
+                    if (slot == mid) break;
+                    if (slot < mid) hi = mid;
+                    else lo = mid + 1;
+                }
+                while (depth > 0) {
+                    depth--;
+                    summarize(los[depth], his[depth]);
+                }
+            }
+
+            void collectLive(List<Site> out) {
+                for (Site site : sites) {
+                    if (site.alive) out.add(site);
+                }
+            }
+
+            private long boxDistance(int node, int x, int y) {
+                long dx = Math.max(0, Math.max((long) minX[node] - x, (long) x - maxX[node]));
+                long dy = Math.max(0, Math.max((long) minY[node] - y, (long) y - maxY[node]));
+                return dx + dy;
+            }
+
+            // Nearest live site other than 'from' (distance, then index), merged into best/bestDistance.
+            void nearest(Site from, int lo, int hi, int depth, Site[] best, long[] bestDistance) {
+                if (lo >= hi) return;
+                int mid = (lo + hi) >>> 1;
+                if (boxDistance(mid, from.x, from.y) > bestDistance[0]) return; // Equal may still win on index
+                Site site = sites[mid];
+                if (site.alive && site != from) {
+                    long distance = siteDistance(from, site);
+                    if (best[0] == null || closer(distance, site.index(), bestDistance[0], best[0].index())) {
+                        best[0] = site;
+                        bestDistance[0] = distance;
+                    }
+                }
+                // Near side first
+                boolean left = depth % 2 == 0 ? from.x < site.x : from.y < site.y;
+                nearest(from, left ? lo : mid + 1, left ? mid : hi, depth + 1, best, bestDistance);
+                nearest(from, left ? mid + 1 : lo, left ? hi : mid, depth + 1, best, bestDistance);
+            }
+
+            // Live sites for which 'from' would be a better nearest site than their current one.
+            void closerTo(Site from, int lo, int hi, List<Site> out) {
+                if (lo >= hi) return;
+                int mid = (lo + hi) >>> 1;
+                if (boxDistance(mid, from.x, from.y) > maxRadius[mid]) return;
+                Site site = sites[mid];
+                if (site.alive && site != from) {
+                    long distance = siteDistance(from, site);
+                    if (site.nearest == null || closer(distance, from.index(), site.nearestDistance, site.nearest.index())) {
+                        out.add(site);
+                    }
+                }
+                closerTo(from, lo, mid, out);
+                closerTo(from, mid + 1, hi, out);
+            }
+        }
+    }
+
+    // Best time of 10 runs after a warm-up, in microseconds.
+    private static long bestMicros(Runnable task) {
+        for (int i = 0; i < 20; i++) task.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000;
     }
 
     public static void main(String[] args) {
         // Example usage
         int[] x_coords = {1, 2, 3, 2, 4};
         int[] y_coords = {2, 3, 1, 2, 3};
-        // int[] result = findClosestPair(x_coords, y_coords);
         int[] result = closestPair(x_coords, y_coords);
         System.out.println("Closest pair indices: " + Arrays.toString(result));
+
+        // Build the index once, then query it repeatedly
+        SpatialIndex index = new SpatialIndex(x_coords, y_coords);
+        System.out.println("Index closest pair: " + Arrays.toString(index.closestPair()));
+        System.out.println("2 nearest to (3, 3): " + Arrays.toString(index.nearest(3, 3, 2)));
+        System.out.println("Pairs within distance 1: " + Arrays.deepToString(index.pairsWithin(1)));
+
+        // Points arriving and leaving one at a time
+        DynamicClosestPair dynamic = new DynamicClosestPair();
+        for (int i = 0; i < x_coords.length; i++) dynamic.insert(x_coords[i], y_coords[i]);
+        System.out.println("Dynamic closest pair: " + Arrays.toString(dynamic.closestPair()));
+        dynamic.remove(3);
+        System.out.println("After removing point 3: " + Arrays.toString(dynamic.closestPair()));
+        dynamic.insert(1, 3);
+        System.out.println("After inserting (1, 3) as point 5: " + Arrays.toString(dynamic.closestPair()));
+
+        // The fast engine must agree with brute force, including ties (small grid = many ties).
+        Random random = new Random(42);
+        boolean same = true;
+        for (int round = 0; round < 200; round++) {
+            int n = 2 + random.nextInt(300);
+            int range = 1 + random.nextInt(round % 2 == 0 ? 20 : 100_000);
+            int[] xs = new int[n], ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = random.nextInt(range);
+                ys[i] = random.nextInt(range);
+            }
+            int[] expected = bruteForceClosestPair(xs, ys);
+            same &= Arrays.equals(bruteForceKernel(xs, ys), expected)
+                    && Arrays.equals(divideAndConquerClosestPair(xs, ys), expected);
+        }
+        System.out.println("Matches brute force on 200 random sets: " + same);
+
+        // Parallel mode on enough points to actually fork, with plenty of equal distances
+        int[] manyX = new int[50_000], manyY = new int[50_000];
+        for (int i = 0; i < manyX.length; i++) {
+            manyX[i] = random.nextInt(2_000);
+            manyY[i] = random.nextInt(2_000);
+        }
+        System.out.println("Parallel (4 threads) matches sequential on 50000 points: "
+                + Arrays.equals(findClosestPairParallel(manyX, manyY, 4), findClosestPair(manyX, manyY)));
+
+        if (args.length > 0 && args[0].equals("bench")) {
+            // Small inputs: where the kernel stops beating divide and conquer (best of 10 runs)
+            for (int n : new int[]{64, 256, 512, 1024, 2048, 4096}) {
+                int[] xs = new int[n], ys = new int[n];
+                for (int i = 0; i < n; i++) {
+                    xs[i] = random.nextInt(1 << 20);
+                    ys[i] = random.nextInt(1 << 20);
+                }
+                System.out.printf("n = %d: brute force %d us, kernel %d us, divide and conquer %d us%n", n,
+                        bestMicros(() -> bruteForceClosestPair(xs, ys)),
+                        bestMicros(() -> bruteForceKernel(xs, ys)),
+                        bestMicros(() -> divideAndConquerClosestPair(xs, ys)));
+            }
+
+            // Scaling from 1 thread up to the number of available processors
+            int maxThreads = Runtime.getRuntime().availableProcessors();
+            for (int n : new int[]{1_000_000, 10_000_000}) {
+                int[] xs = new int[n], ys = new int[n];
+                for (int i = 0; i < n; i++) {
+                    xs[i] = random.nextInt();
+                    ys[i] = random.nextInt();
+                }
+                long start = System.nanoTime();
+                int[] expected = findClosestPair(xs, ys);
+                System.out.printf("n = %d, sequential: %s in %d ms%n", n, Arrays.toString(expected), (System.nanoTime() - start) / 1_000_000);
+                for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads) : threads + 1) {
+                    start = System.nanoTime();
+                    int[] pair = findClosestPairParallel(xs, ys, threads);
+                    System.out.printf("n = %d, %d thread(s): %s in %d ms%s%n", n, threads, Arrays.toString(pair),
+                            (System.nanoTime() - start) / 1_000_000, Arrays.equals(pair, expected) ? "" : " MISMATCH");
+                }
+            }
+        }
     }
-} 
-// Output: Closest pair indices: [0, 3]
\ No newline at end of file
+}
+// Output: Closest pair indices: [0, 3]
+//         Index closest pair: [0, 3]
+//         2 nearest to (3, 3): [1, 4]
+//         Pairs within distance 1: [[0, 3], [1, 3]]
+//         Dynamic closest pair: [0, 3]
+//         After removing point 3: [0, 1]
+//         After inserting (1, 3) as point 5: [0, 5]
+//         Matches brute force on 200 random sets: true
+//         Parallel (4 threads) matches sequential on 50000 points: true
@@ -2,101 +2,1113 @@
 
 
 /*
-Task: Find and show the top 3 hashtags from tweets, sorted by how often they appear.
+Task: Given two sorted arrays nums1 and nums2, find the kth smallest product nums1[i] * nums2[j].
 
 Steps:
 
-1. Store tweets in a list of maps (user_id, tweet_id, tweet, tweet_date).
-2. Pick out hashtags from tweets and count how many times each appears using a HashMap.
-3. Sort hashtags by count (highest first). If two hashtags have the same count, sort them alphabetically.
-4. Show the top 3 hashtags in a table format.
+1. Search on the answer: the kth smallest product lies between the smallest and the largest product.
+2. For a candidate value p, count how many products are <= p (count(p)).
+3. If count(p) >= k the answer is <= p, otherwise it is > p.
+4. The smallest p with count(p) >= k is the kth smallest product.
 
 How it works:
 
-- Finding Hashtags: Look for words starting with #.
-- Counting: Keep track of how many times each hashtag appears.
-- Sorting: First by count (highest to lowest), then by name (A to Z).
-- Showing: Print the top 3 hashtags in a table.
+- Counting: each array is split into its negative, zero and positive part. For each pair of parts
+  the number of products <= p changes in one direction as x moves along its part, so one pointer
+  per pair of parts sweeps the other array once: O(m + n) per count. countParallel splits nums1
+  over a ForkJoinPool and adds up the counts of the pieces. (The original count, one binary
+  search of nums2 per x, is kept as countBinarySearch.)
+- Choosing p: instead of halving the whole value range (about 64 counts), products between the
+  current bounds are sampled and p is taken from the sample just around the kth position; a
+  round usually keeps only a few percent of the products. When at most m + n are left they are
+  collected and the answer is picked with quickselect, so a query needs about 10 counts.
+- Many queries: ProductQuery is built once (copies the arrays and finds the smallest and largest
+  product) and answers any number of k, from any number of threads, since it never changes.
+- Other combinations: PairwiseQuery answers the same question for a + b, a - b or any Combiner
+  that is monotone in b for every a, with the original binary search structure, and can list the
+  combinations in ascending order lazily (a heap holding the next element of every row).
+- Wide inputs: WideProductQuery takes long[] arrays; products are compared exactly as 128-bit
+  (high, low) word pairs from Math.multiplyHigh, and only the answer becomes a BigInteger.
+- Columns in files: MappedProductQuery reads two memory-mapped files of sorted ints (IntColumn)
+  with no load step and memory that does not grow with them; pivots come from products sampled
+  over all pairs and the last few candidates are collected a block of rows at a time.
+- Batches: for k values in sorted order the answers are sorted too, so the answer for a middle k
+  bounds the search range of all the smaller and all the larger k.
 
 Efficiency:
-- Time: O(n * m), where n = number of tweets, m = words per tweet.
-- Space: O(k), where k = unique hashtags.
+- Time: O(m + n) per count, about 10 counts per query (at most O(log R), R = range of the products).
+- Space: O(m + n) for the query object.
 */
 
-import java.util.*; // Bring in Java utilities like List and Map for handling tweets.
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*; // Bring in Java utilities like Arrays for sorting the batch of k values.
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
 
 public class KthSmallestProduct { // Class to find the kth smallest product of two arrays
-    private int[] nums1; // Array to store the first set of numbers
-    private int[] nums2; // Array to store the second set of numbers
 
     // Method to find the kth smallest product of pairs from nums1 and nums2
     public long kthSmallestProduct(int[] nums1, int[] nums2, long k) {
-        this.nums1 = nums1; // Assign nums1 to the class-level variable
-        this.nums2 = nums2; // Assign nums2 to the class-level variable
+        // A throwaway query object: nothing is stored in this instance, so it is safe to share
+        return new ProductQuery(nums1, nums2).kth(k);
+    }
+
+    // Immutable, pre-processed query object over two sorted arrays. Safe to use from many threads.
+    public static final class ProductQuery {
+        private static final int SAMPLE_SIZE = 16384; // Products sampled per narrowing round
+
+        private final int[] nums1; // Copy of the first sorted array
+        private final int[] nums2; // Copy of the second sorted array
+        private final long min;    // Smallest product
+        private final long max;    // Largest product
+        private final int neg1, zero1, neg2, zero2; // Sizes of the negative and zero parts of each array
+        private final long selectLimit; // Candidates few enough to pick the answer from directly
+
+        public ProductQuery(int[] nums1, int[] nums2) {
+            if (nums1.length == 0 || nums2.length == 0) throw new IllegalArgumentException("Both arrays must be non-empty");
+            this.nums1 = nums1.clone(); // Copy so later changes by the caller cannot affect the answers
+            this.nums2 = nums2.clone();
+
+            // The extreme products are among the products of the end points
+            long[] corners = {
+                    (long) this.nums1[0] * this.nums2[0], (long) this.nums1[0] * this.nums2[this.nums2.length - 1],
+                    (long) this.nums1[this.nums1.length - 1] * this.nums2[0],
+                    (long) this.nums1[this.nums1.length - 1] * this.nums2[this.nums2.length - 1]};
+            this.min = Arrays.stream(corners).min().getAsLong();
+            this.max = Arrays.stream(corners).max().getAsLong();
+
+            // Sorted arrays: negatives come first, then zeros, then positives
+            this.neg1 = lowerBound(this.nums1, 0);
+            this.zero1 = lowerBound(this.nums1, 1) - neg1;
+            this.neg2 = lowerBound(this.nums2, 0);
+            this.zero2 = lowerBound(this.nums2, 1) - neg2;
+            this.selectLimit = Math.max(4096, (long) nums1.length + nums2.length);
+        }
+
+        // First index whose value is >= key
+        private static int lowerBound(int[] nums, int key) {
+            int l = 0, r = nums.length;
+            while (l < r) {
+                int mid = (l + r) >>> 1;
+                if (nums[mid] < key) l = mid + 1;
+                else r = mid;
+            }
+            return l;
+        }
+
+        // Number of products, m * n
+        public long size() {
+            return (long) nums1.length * nums2.length;
+        }
+
+        // The kth smallest product, k from 1 to size()
+        public long kth(long k) {
+            checkRank(k);
+            return select(k, min, max, null);
+        }
+
+        // Same answer as kth(k), with every count split across the pool's threads
+        public long kth(long k, ForkJoinPool pool) {
+            checkRank(k);
+            return select(k, min, max, pool);
+        }
 
-        int m = nums1.length; // Length of nums1
-        int n = nums2.length; // Length of nums2
+        // The kth smallest product for every k in ks (any order), answers in the same order.
+        // The ks are solved in sorted order, middle one first, so each answer narrows the
+        // search range of the ones on either side of it.
+        public long[] kth(long[] ks) {
+            for (long k : ks) checkRank(k);
+            Integer[] order = new Integer[ks.length]; // Positions of ks sorted by k
+            for (int i = 0; i < ks.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> ks[i]));
 
-        // Find the maximum absolute values in nums1 and nums2
-        int a = Math.max(Math.abs(nums1[0]), Math.abs(nums1[m - 1]));
-        int b = Math.max(Math.abs(nums2[0]), Math.abs(nums2[n - 1]));
+            long[] answers = new long[ks.length];
+            solve(ks, order, 0, ks.length, min, max, answers);
+            return answers;
+        }
 
-        // Set the search range for binary search
-        long r = (long) a * b;  // Upper bound for the product
-        long l = (long) -a * b; // Lower bound for the product
+        // Answers ks[order[from..to)], knowing all those answers lie in [lo, hi].
+        private void solve(long[] ks, Integer[] order, int from, int to, long lo, long hi, long[] answers) {
+            if (from >= to) return;
+            int mid = (from + to) >>> 1;
+            long answer = select(ks[order[mid]], lo, hi, null);
+            answers[order[mid]] = answer;
+            solve(ks, order, from, mid, lo, answer, answers);     // Smaller k: answer is at most this one
+            solve(ks, order, mid + 1, to, answer, hi, answers);   // Larger k: answer is at least this one
+        }
 
-        // Perform binary search to find the kth smallest product
-        while (l < r) {
-            long mid = (l + r) >> 1;  // Calculate the midpoint of the current range
-            if (count(mid) >= k) { // If the number of products <= mid is >= k
-                r = mid; // Narrow the search to the lower half
+        // The kth smallest product, knowing it lies in [lo, hi].
+        // Invariant: count(below) < k <= count(hi), so the answer is in (below, hi]. The products in
+        // that range ("candidates") are, per row i of nums1, one run of nums2 between the row counts
+        // for below and for hi. Each round samples candidates uniformly, and counts at the two
+        // sample values just around the kth position, which usually leaves a few percent of the
+        // candidates. Once few enough are left, they are collected and the answer is picked directly.
+        private long select(long k, long lo, long hi, ForkJoinPool pool) {
+            int m = nums1.length, n = nums2.length;
+            int[] rowsBelow = new int[m], rowsHi = new int[m], rowsProbe = new int[m];
+            long below = lo - 1;
+            long countBelow = below < min ? 0 : countRows(below, rowsBelow, pool);
+            long countHi;
+            if (hi >= max) {
+                Arrays.fill(rowsHi, n);
+                countHi = size();
             } else {
-                l = mid + 1; // Narrow the search to the upper half
+                countHi = countRows(hi, rowsHi, pool);
+            }
+
+            while (countHi - countBelow > selectLimit) {
+                if (hi - below == 1) return hi; // Only one value left
+                for (long p : samplePivots(k - countBelow, countHi - countBelow, rowsBelow, rowsHi)) {
+                    p = Math.max(below + 1, Math.min(hi - 1, p)); // Strictly inside (below, hi)
+                    if (p <= below || p >= hi) continue;
+                    long c = countRows(p, rowsProbe, pool);
+                    int[] swap = rowsProbe;
+                    if (c >= k) { // Answer is <= p
+                        hi = p;
+                        countHi = c;
+                        rowsProbe = rowsHi;
+                        rowsHi = swap;
+                    } else {      // Answer is > p
+                        below = p;
+                        countBelow = c;
+                        rowsProbe = rowsBelow;
+                        rowsBelow = swap;
+                    }
+                }
+            }
+
+            // Few candidates left: collect them and pick the (k - countBelow)th smallest
+            long[] candidates = new long[(int) (countHi - countBelow)];
+            int size = 0;
+            for (int i = 0; i < m; i++) {
+                long x = nums1[i];
+                int from = x >= 0 ? rowsBelow[i] : n - rowsHi[i]; // Rows of negative x count from the end
+                int to = x >= 0 ? rowsHi[i] : n - rowsBelow[i];
+                for (int j = from; j < to; j++) candidates[size++] = x * nums2[j];
             }
+            return quickSelect(candidates, (int) (k - countBelow - 1));
         }
 
-        return l; // Return the kth smallest product
+        // Two sample values around rank 'rank' (1-based) of the 'total' candidates between the row counts
+        private long[] samplePivots(long rank, long total, int[] rowsBelow, int[] rowsHi) {
+            int n = nums2.length;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long[] positions = new long[SAMPLE_SIZE]; // Random candidate positions, in row order
+            for (int s = 0; s < SAMPLE_SIZE; s++) positions[s] = random.nextLong(total);
+            Arrays.sort(positions);
+
+            // One walk over the rows finds the product at every position
+            long[] sample = new long[SAMPLE_SIZE];
+            long before = 0; // Candidates in the rows before row i
+            for (int i = 0, s = 0; s < SAMPLE_SIZE; i++) {
+                int inRow = rowsHi[i] - rowsBelow[i];
+                long x = nums1[i];
+                int first = x >= 0 ? rowsBelow[i] : n - rowsHi[i]; // Rows of negative x count from the end
+                for (; s < SAMPLE_SIZE && positions[s] < before + inRow; s++) {
+                    sample[s] = x * nums2[first + (int) (positions[s] - before)];
+                }
+                before += inRow;
+            }
+            Arrays.sort(sample);
+
+            // Expected position of the answer in the sample, widened by three standard deviations
+            double f = (double) rank / total;
+            double margin = 3 * Math.sqrt(SAMPLE_SIZE * f * (1 - f)) + 1;
+            int low = (int) Math.max(0, Math.floor(f * SAMPLE_SIZE - margin));
+            int high = (int) Math.min(SAMPLE_SIZE - 1, Math.ceil(f * SAMPLE_SIZE + margin));
+            return new long[]{sample[low], sample[high]};
+        }
+
+        // The element that would be at position 'rank' if the array were sorted (reorders the array)
+        private static long quickSelect(long[] a, int rank) {
+            int l = 0, r = a.length - 1;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (l < r) {
+                long pivot = a[l + random.nextInt(r - l + 1)];
+                int i = l, j = r;
+                while (i <= j) {
+                    while (a[i] < pivot) i++;
+                    while (a[j] > pivot) j--;
+                    if (i <= j) {
+                        long t = a[i];
+                        a[i++] = a[j];
+                        a[j--] = t;
+                    }
+                }
+                if (rank <= j) r = j;
+                else if (rank >= i) l = i;
+                else return a[rank]; // Between j and i everything equals the pivot
+            }
+            return a[rank];
+        }
+
+        // Plain binary search over the whole product range, counting with countBinarySearch
+        // (the original algorithm, kept for comparison)
+        long kthBinarySearch(long k) {
+            checkRank(k);
+            long l = min, r = max;
+            while (l < r) {
+                long mid = l + ((r - l) >> 1); // Midpoint of the current range, written so it cannot overflow
+                if (countBinarySearch(mid) >= k) { // If the number of products <= mid is >= k
+                    r = mid; // Narrow the search to the lower half
+                } else {
+                    l = mid + 1; // Narrow the search to the upper half
+                }
+            }
+            return l;
+        }
+
+        private void checkRank(long k) {
+            if (k < 1 || k > size()) throw new IllegalArgumentException("k must be between 1 and " + size() + ": " + k);
+        }
+
+        // Number of products <= p: O(m + n)
+        long count(long p) {
+            return countRows(p, 0, nums1.length, null);
+        }
+
+        // Number of products <= p, counting parts of nums1 in parallel
+        long countParallel(long p, ForkJoinPool pool) {
+            return pool.invoke(new CountTask(this, p, 0, nums1.length, null));
+        }
+
+        // Count for every row, sequentially (pool == null) or in parallel
+        private long countRows(long p, int[] rows, ForkJoinPool pool) {
+            return pool == null ? countRows(p, 0, nums1.length, rows) : pool.invoke(new CountTask(this, p, 0, nums1.length, rows));
+        }
+
+        // Number of products <= p in rows nums1[from..to), and each row's count in rows[i] if rows != null.
+        // For x > 0 the products grow along nums2, so the row's products <= p are a prefix of nums2;
+        // for x < 0 they are a suffix; for x = 0 they are all or none. Within the negative and within
+        // the positive part of nums1 those prefixes and suffixes move in one direction, so one pointer
+        // per part of nums2 sweeps it once (after a binary search for the first row): O(rows + n).
+        private long countRows(long p, int from, int to, int[] rows) {
+            int n = nums2.length;
+            int pos1 = neg1 + zero1, pos2 = neg2 + zero2; // Where the positive parts start
+            int zeros = p >= 0 ? zero2 : 0;                // Products with a zero y that are <= p
+            long cnt = 0;
+
+            // Negative x: a suffix of the negative y and a suffix of the positive y qualify
+            int start = from, end = Math.min(to, neg1);
+            if (start < end) {
+                int jNeg = firstIndex(nums1[start], p, 0, neg2, true);     // Grows as x moves towards 0
+                int jPos = firstIndex(nums1[start], p, pos2, n, true);     // Shrinks as x moves towards 0
+                for (int i = start; i < end; i++) {
+                    long x = nums1[i];
+                    while (jNeg > 0 && x * nums2[jNeg - 1] <= p) jNeg--;
+                    while (jPos < n && x * nums2[jPos] > p) jPos++;
+                    int c = (neg2 - jNeg) + zeros + (n - jPos);
+                    cnt += c;
+                    if (rows != null) rows[i] = c;
+                }
+            }
+
+            // Zero x: every product is 0
+            start = Math.max(from, neg1);
+            end = Math.min(to, pos1);
+            if (start < end) {
+                int c = p >= 0 ? n : 0;
+                cnt += (long) c * (end - start);
+                if (rows != null) Arrays.fill(rows, start, end, c);
+            }
+
+            // Positive x: a prefix of the negative y and a prefix of the positive y qualify
+            start = Math.max(from, pos1);
+            end = to;
+            if (start < end) {
+                int jNeg = firstIndex(nums1[start], p, 0, neg2, false);    // Grows as x grows
+                int jPos = firstIndex(nums1[start], p, pos2, n, false);    // Shrinks as x grows
+                for (int i = start; i < end; i++) {
+                    long x = nums1[i];
+                    while (jNeg < neg2 && x * nums2[jNeg] <= p) jNeg++;
+                    while (jPos > pos2 && x * nums2[jPos - 1] > p) jPos--;
+                    int c = jNeg + zeros + (jPos - pos2);
+                    cnt += c;
+                    if (rows != null) rows[i] = c;
+                }
+            }
+            return cnt;
+        }
+
+        // First j in [l, r) where x * nums2[j] <= p (atMost) or > p (!atMost); the products are
+        // monotone in j on a part of nums2 with one sign, so this is a binary search. r if none.
+        private int firstIndex(long x, long p, int l, int r, boolean atMost) {
+            while (l < r) {
+                int mid = (l + r) >>> 1;
+                if ((x * nums2[mid] <= p) == atMost) r = mid;
+                else l = mid + 1;
+            }
+            return l;
+        }
+
+        // Number of products <= p with one binary search of nums2 per element of nums1
+        long countBinarySearch(long p) {
+            long cnt = 0; // Counter for valid products
+            int n = nums2.length; // Length of nums2
+
+            // Iterate through each element in nums1
+            for (int x : nums1) {
+                if (x > 0) { // If x is positive
+                    int l = 0, r = n;
+                    while (l < r) {
+                        int mid = (l + r) >> 1; // Find the middle index of nums2
+                        if ((long) x * nums2[mid] > p) { // If the product is greater than p
+                            r = mid; // Narrow the search to the left side
+                        } else {
+                            l = mid + 1; // Narrow the search to the right side
+                        }
+                    }
+                    cnt += l; // Add the count of valid products for positive x
+                } else if (x < 0) { // If x is negative
+                    int l = 0, r = n;
+                    while (l < r) {
+                        int mid = (l + r) >> 1; // Find the middle index of nums2
+                        if ((long) x * nums2[mid] <= p) { // If the product is <= p
+                            r = mid; // Narrow the search to the left side
+                        } else {
+                            l = mid + 1; // Narrow the search to the right side
+                        }
+                    }
+                    cnt += n - l; // Add the count of valid products for negative x
+                } else if (p >= 0) { // If x is 0 and p >= 0
+                    cnt += n; // All elements in nums2 contribute to valid products
+                }
+            }
+
+            return cnt; // Return the total count of valid products
+        }
     }
 
-    // Helper method to count the number of products <= p
-    private long count(long p) {
-        long cnt = 0; // Counter for valid products
-        int n = nums2.length; // Length of nums2
+    // Counts the products <= p for a range of nums1, splitting it in halves until it is small
+    private static final class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 1 << 15; // Ranges this small are counted directly
 
-        // Iterate through each element in nums1
-        for (int x : nums1) {
-            if (x > 0) { // If x is positive
-                int l = 0, r = n;
-                while (l < r) {
-                    int mid = (l + r) >> 1; // Find the middle index of nums2
-                    if ((long) x * nums2[mid] > p) { // If the product is greater than p
-                        r = mid; // Narrow the search to the left side
-                    } else {
-                        l = mid + 1; // Narrow the search to the right side
+        private final ProductQuery query;
+        private final long p;
+        private final int from, to;
+        private final int[] rows; // Per-row counts, or null
+
+        CountTask(ProductQuery query, long p, int from, int to, int[] rows) {
+            this.query = query;
+            this.p = p;
+            this.from = from;
+            this.to = to;
+            this.rows = rows;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= THRESHOLD) return query.countRows(p, from, to, rows);
+            int mid = (from + to) >>> 1;
+            CountTask left = new CountTask(query, p, from, mid, rows);
+            left.fork();
+            long right = new CountTask(query, p, mid, to, rows).compute();
+            return right + left.join();
+        }
+    }
+
+    // kth smallest product of two sorted long[] arrays. A product can need 128 bits, so products are
+    // handled as (high, low) word pairs: Math.multiplyHigh gives the high word and the plain
+    // product the low word, and comparisons are exact. Only the final answer becomes a BigInteger.
+    // The search works like ProductQuery's (sampled narrowing, then quickselect); when a sample
+    // gives no usable pivot it falls back to the midpoint of the 128-bit range, so it always ends.
+    // Inputs that all fit in an int are answered by ProductQuery, at the same speed.
+    // Immutable and safe to use from many threads.
+    public static final class WideProductQuery {
+        private static final int SAMPLE_SIZE = 4096; // Products sampled per narrowing round
+
+        private final long[] nums1; // Copy of the first sorted array
+        private final long[] nums2; // Copy of the second sorted array
+        private final ProductQuery small; // Used instead when every value fits in an int, else null
+        private final int neg1, zero1, neg2, zero2; // Sizes of the negative and zero parts of each array
+        private final long selectLimit; // Candidates few enough to pick the answer from directly
+        private final long minHigh, minLow, maxHigh, maxLow; // Smallest and largest product
+
+        public WideProductQuery(long[] nums1, long[] nums2) {
+            if (nums1.length == 0 || nums2.length == 0) throw new IllegalArgumentException("Both arrays must be non-empty");
+            this.nums1 = nums1.clone();
+            this.nums2 = nums2.clone();
+            this.small = fitsInt(this.nums1) && fitsInt(this.nums2) ? new ProductQuery(toInts(this.nums1), toInts(this.nums2)) : null;
+
+            this.neg1 = lowerBound(this.nums1, 0);
+            this.zero1 = lowerBound(this.nums1, 1) - neg1;
+            this.neg2 = lowerBound(this.nums2, 0);
+            this.zero2 = lowerBound(this.nums2, 1) - neg2;
+            this.selectLimit = Math.max(4096, (long) nums1.length + nums2.length);
+
+            // The extreme products are among the products of the end points
+            long[] ends1 = {this.nums1[0], this.nums1[this.nums1.length - 1]};
+            long[] ends2 = {this.nums2[0], this.nums2[this.nums2.length - 1]};
+            long lowH = Long.MAX_VALUE, lowL = -1, highH = Long.MIN_VALUE, highL = 0;
+            for (long a : ends1) {
+                for (long b : ends2) {
+                    long h = Math.multiplyHigh(a, b), l = a * b;
+                    if (compare(h, l, lowH, lowL) < 0) { lowH = h; lowL = l; }
+                    if (compare(h, l, highH, highL) > 0) { highH = h; highL = l; }
+                }
+            }
+            this.minHigh = lowH;
+            this.minLow = lowL;
+            this.maxHigh = highH;
+            this.maxLow = highL;
+        }
+
+        private static boolean fitsInt(long[] nums) {
+            return nums[0] >= Integer.MIN_VALUE && nums[nums.length - 1] <= Integer.MAX_VALUE; // Sorted: the ends decide
+        }
+
+        private static int[] toInts(long[] nums) {
+            int[] ints = new int[nums.length];
+            for (int i = 0; i < nums.length; i++) ints[i] = (int) nums[i];
+            return ints;
+        }
+
+        // First index whose value is >= key
+        private static int lowerBound(long[] nums, long key) {
+            int l = 0, r = nums.length;
+            while (l < r) {
+                int mid = (l + r) >>> 1;
+                if (nums[mid] < key) l = mid + 1;
+                else r = mid;
+            }
+            return l;
+        }
+
+        // Number of products, m * n
+        public long size() {
+            return (long) nums1.length * nums2.length;
+        }
+
+        // The kth smallest product, k from 1 to size()
+        public BigInteger kth(long k) {
+            if (k < 1 || k > size()) throw new IllegalArgumentException("k must be between 1 and " + size() + ": " + k);
+            if (small != null) return BigInteger.valueOf(small.kth(k));
+
+            int m = nums1.length, n = nums2.length;
+            int[] rowsBelow = new int[m], rowsHi = new int[m], rowsProbe = new int[m];
+            // Invariant: count(below) < k <= count(hi); below starts just under the smallest product
+            long belowH = minLow == 0 ? minHigh - 1 : minHigh, belowL = minLow - 1;
+            long hiH = maxHigh, hiL = maxLow;
+            long countBelow = 0, countHi = size();
+            Arrays.fill(rowsHi, n);
+
+            while (countHi - countBelow > selectLimit) {
+                if (hiL - belowL == 1 && hiH == (belowL == -1 ? belowH + 1 : belowH)) return toBigInteger(hiH, hiL); // Only one value left
+                long[] pivots = samplePivots(k - countBelow, countHi - countBelow, rowsBelow, rowsHi);
+                for (int s = 0; s < pivots.length; s += 2) {
+                    long pH = pivots[s], pL = pivots[s + 1];
+                    if (compare(pH, pL, belowH, belowL) <= 0 || compare(pH, pL, hiH, hiL) >= 0) {
+                        // Not strictly inside (below, hi): use the midpoint instead, floor((below + hi) / 2).
+                        // The sum fits in 128 bits since every product is within +-2^126.
+                        long sumL = belowL + hiL;
+                        long sumH = belowH + hiH + (Long.compareUnsigned(sumL, belowL) < 0 ? 1 : 0);
+                        pL = (sumL >>> 1) | (sumH << 63);
+                        pH = sumH >> 1;
+                    }
+                    long c = countRows(pH, pL, rowsProbe);
+                    int[] swap = rowsProbe;
+                    if (c >= k) { // Answer is <= p
+                        hiH = pH;
+                        hiL = pL;
+                        countHi = c;
+                        rowsProbe = rowsHi;
+                        rowsHi = swap;
+                    } else {      // Answer is > p
+                        belowH = pH;
+                        belowL = pL;
+                        countBelow = c;
+                        rowsProbe = rowsBelow;
+                        rowsBelow = swap;
+                    }
+                    if (countHi - countBelow <= selectLimit) break;
+                }
+            }
+
+            // Few candidates left: collect them and pick the (k - countBelow)th smallest
+            int size = (int) (countHi - countBelow);
+            long[] high = new long[size], low = new long[size];
+            int c = 0;
+            for (int i = 0; i < m; i++) {
+                long x = nums1[i];
+                int from = x >= 0 ? rowsBelow[i] : n - rowsHi[i]; // Rows of negative x count from the end
+                int to = x >= 0 ? rowsHi[i] : n - rowsBelow[i];
+                for (int j = from; j < to; j++) {
+                    high[c] = Math.multiplyHigh(x, nums2[j]);
+                    low[c++] = x * nums2[j];
+                }
+            }
+            int rank = quickSelect(high, low, (int) (k - countBelow - 1));
+            return toBigInteger(high[rank], low[rank]);
+        }
+
+        // Two sample products, as (high, low, high, low), around rank 'rank' of the 'total' candidates
+        private long[] samplePivots(long rank, long total, int[] rowsBelow, int[] rowsHi) {
+            int n = nums2.length;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long[] positions = new long[SAMPLE_SIZE]; // Random candidate positions, in row order
+            for (int s = 0; s < SAMPLE_SIZE; s++) positions[s] = random.nextLong(total);
+            Arrays.sort(positions);
+
+            long[] high = new long[SAMPLE_SIZE], low = new long[SAMPLE_SIZE];
+            long before = 0; // Candidates in the rows before row i
+            for (int i = 0, s = 0; s < SAMPLE_SIZE; i++) {
+                int inRow = rowsHi[i] - rowsBelow[i];
+                long x = nums1[i];
+                int first = x >= 0 ? rowsBelow[i] : n - rowsHi[i];
+                for (; s < SAMPLE_SIZE && positions[s] < before + inRow; s++) {
+                    long y = nums2[first + (int) (positions[s] - before)];
+                    high[s] = Math.multiplyHigh(x, y);
+                    low[s] = x * y;
+                }
+                before += inRow;
+            }
+
+            // Expected position of the answer in the sample, widened by three standard deviations
+            double f = (double) rank / total;
+            double margin = 3 * Math.sqrt(SAMPLE_SIZE * f * (1 - f)) + 1;
+            int lowRank = (int) Math.max(0, Math.floor(f * SAMPLE_SIZE - margin));
+            int highRank = (int) Math.min(SAMPLE_SIZE - 1, Math.ceil(f * SAMPLE_SIZE + margin));
+            int a = quickSelect(high, low, lowRank);
+            long aH = high[a], aL = low[a];
+            int b = quickSelect(high, low, highRank);
+            return new long[]{aH, aL, high[b], low[b]};
+        }
+
+        // Number of products <= p = (pH, pL) in every row (stored in rows), like ProductQuery.countRows
+        private long countRows(long pH, long pL, int[] rows) {
+            int m = nums1.length, n = nums2.length;
+            int pos1 = neg1 + zero1, pos2 = neg2 + zero2; // Where the positive parts start
+            int zeros = pH >= 0 ? zero2 : 0;               // Products with a zero y that are <= p (p >= 0)
+            long cnt = 0;
+
+            // Negative x: a suffix of the negative y and a suffix of the positive y qualify
+            if (neg1 > 0) {
+                int jNeg = firstIndex(nums1[0], pH, pL, 0, neg2, true);
+                int jPos = firstIndex(nums1[0], pH, pL, pos2, n, true);
+                for (int i = 0; i < neg1; i++) {
+                    long x = nums1[i];
+                    while (jNeg > 0 && atMost(x, nums2[jNeg - 1], pH, pL)) jNeg--;
+                    while (jPos < n && !atMost(x, nums2[jPos], pH, pL)) jPos++;
+                    rows[i] = (neg2 - jNeg) + zeros + (n - jPos);
+                    cnt += rows[i];
+                }
+            }
+
+            // Zero x: every product is 0
+            int c = pH >= 0 ? n : 0;
+            Arrays.fill(rows, neg1, pos1, c);
+            cnt += (long) c * zero1;
+
+            // Positive x: a prefix of the negative y and a prefix of the positive y qualify
+            if (pos1 < m) {
+                int jNeg = firstIndex(nums1[pos1], pH, pL, 0, neg2, false);
+                int jPos = firstIndex(nums1[pos1], pH, pL, pos2, n, false);
+                for (int i = pos1; i < m; i++) {
+                    long x = nums1[i];
+                    while (jNeg < neg2 && atMost(x, nums2[jNeg], pH, pL)) jNeg++;
+                    while (jPos > pos2 && !atMost(x, nums2[jPos - 1], pH, pL)) jPos--;
+                    rows[i] = jNeg + zeros + (jPos - pos2);
+                    cnt += rows[i];
+                }
+            }
+            return cnt;
+        }
+
+        // First j in [l, r) where x * nums2[j] <= p (atMost) or > p (!atMost). r if none.
+        private int firstIndex(long x, long pH, long pL, int l, int r, boolean atMost) {
+            while (l < r) {
+                int mid = (l + r) >>> 1;
+                if (atMost(x, nums2[mid], pH, pL) == atMost) r = mid;
+                else l = mid + 1;
+            }
+            return l;
+        }
+
+        // Exact x * y <= p, with p given as (high, low) words
+        private static boolean atMost(long x, long y, long pH, long pL) {
+            long h = Math.multiplyHigh(x, y);
+            return h < pH || (h == pH && Long.compareUnsigned(x * y, pL) <= 0);
+        }
+
+        // Compares two 128-bit values given as (signed high word, unsigned low word)
+        private static int compare(long aH, long aL, long bH, long bL) {
+            return aH != bH ? Long.compare(aH, bH) : Long.compareUnsigned(aL, bL);
+        }
+
+        // Reorders the pairs so position 'rank' holds the one that would be there if sorted; returns rank
+        private static int quickSelect(long[] high, long[] low, int rank) {
+            int l = 0, r = high.length - 1;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (l < r) {
+                int p = l + random.nextInt(r - l + 1);
+                long pivotH = high[p], pivotL = low[p];
+                int i = l, j = r;
+                while (i <= j) {
+                    while (compare(high[i], low[i], pivotH, pivotL) < 0) i++;
+                    while (compare(high[j], low[j], pivotH, pivotL) > 0) j--;
+                    if (i <= j) {
+                        long t = high[i]; high[i] = high[j]; high[j] = t;
+                        t = low[i]; low[i++] = low[j]; low[j--] = t;
                     }
                 }
-                cnt += l; // Add the count of valid products for positive x
-            } else if (x < 0) { // If x is negative
+                if (rank <= j) r = j;
+                else if (rank >= i) l = i;
+                else break; // Between j and i everything equals the pivot
+            }
+            return rank;
+        }
+
+        private static BigInteger toBigInteger(long high, long low) {
+            return BigInteger.valueOf(high).shiftLeft(64).add(new BigInteger(Long.toUnsignedString(low)));
+        }
+    }
+
+    // A read-only column of sorted ints stored in a file as 4-byte big-endian values (the format of
+    // DataOutputStream.writeInt), with nothing else in the file. The file is memory-mapped, in
+    // pieces of at most 1 GiB because one MappedByteBuffer cannot exceed 2 GiB, so opening it
+    // costs nothing and the operating system pages values in as the queries touch them.
+    public static final class IntColumn {
+        private static final int CHUNK_SHIFT = 28; // 2^28 ints (1 GiB) per mapping
+        private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+        private final IntBuffer[] chunks;
+        private final long length;
+
+        private IntColumn(IntBuffer[] chunks, long length) {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        // Maps the column file; the values are assumed to be sorted (they are not read here)
+        public static IntColumn map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size % Integer.BYTES != 0) throw new IOException(file + " is not a whole number of ints: " + size + " bytes");
+                long length = size / Integer.BYTES;
+                IntBuffer[] chunks = new IntBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+                for (int c = 0; c < chunks.length; c++) {
+                    long from = (long) c << CHUNK_SHIFT;
+                    long ints = Math.min(CHUNK_MASK + 1, length - from);
+                    // The mapping stays valid after the channel is closed
+                    chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, from * Integer.BYTES, ints * Integer.BYTES).asIntBuffer();
+                }
+                return new IntColumn(chunks, length);
+            }
+        }
+
+        // Writes sorted values in the column format
+        public static void write(Path file, int[] sorted) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+                for (int i = 0; i < sorted.length; ) {
+                    buffer.clear();
+                    while (i < sorted.length && buffer.remaining() >= Integer.BYTES) buffer.putInt(sorted[i++]);
+                    buffer.flip();
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }
+            }
+        }
+
+        public long length() {
+            return length;
+        }
+
+        public int get(long i) {
+            return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+        }
+
+        // First index whose value is >= key
+        long lowerBound(long key) {
+            long l = 0, r = length;
+            while (l < r) {
+                long mid = (l + r) >>> 1;
+                if (get(mid) < key) l = mid + 1;
+                else r = mid;
+            }
+            return l;
+        }
+    }
+
+    // kth smallest product of two memory-mapped sorted columns, for inputs too large for int[].
+    // Nothing is copied or loaded: the constructor does a few binary searches, and every count reads
+    // the columns straight from the mappings with the same two-pointer sweep as ProductQuery (split
+    // over a ForkJoinPool). The memory used does not grow with the columns, so the search cannot
+    // keep per-row counts as ProductQuery does. Instead:
+    // - Pivots come from products sampled uniformly over all pairs, keeping those between the
+    //   current bounds; when too few of them fall between the bounds, the value range is halved.
+    // - Once at most COLLECT_LIMIT products are between the bounds, they are collected in blocks of
+    //   rows and the answer is picked with quickselect.
+    // Immutable and safe to use from many threads.
+    public static final class MappedProductQuery {
+        private static final int SAMPLE_SIZE = 16384;       // Products kept per narrowing round
+        private static final int MAX_DRAWS = 1 << 18;       // Products drawn per round at most
+        private static final int MIN_SAMPLE = 256;          // Fewer kept products than this: halve the range
+        private static final int COLLECT_LIMIT = 1 << 20;   // Candidates few enough to pick the answer from directly
+        private static final int BLOCK = 1 << 16;           // Rows per block when collecting
+
+        private final IntColumn nums1, nums2;
+        private final long min, max;                  // Smallest and largest product
+        private final long neg1, zero1, neg2, zero2;  // Sizes of the negative and zero parts of each column
+
+        public MappedProductQuery(IntColumn nums1, IntColumn nums2) {
+            if (nums1.length() == 0 || nums2.length() == 0) throw new IllegalArgumentException("Both columns must be non-empty");
+            this.nums1 = nums1;
+            this.nums2 = nums2;
+            this.neg1 = nums1.lowerBound(0);
+            this.zero1 = nums1.lowerBound(1) - neg1;
+            this.neg2 = nums2.lowerBound(0);
+            this.zero2 = nums2.lowerBound(1) - neg2;
+
+            // The extreme products are among the products of the end points
+            long a = nums1.get(0), b = nums1.get(nums1.length() - 1);
+            long c = nums2.get(0), d = nums2.get(nums2.length() - 1);
+            this.min = Math.min(Math.min(a * c, a * d), Math.min(b * c, b * d));
+            this.max = Math.max(Math.max(a * c, a * d), Math.max(b * c, b * d));
+        }
+
+        // Number of products, m * n (must fit in a long)
+        public long size() {
+            return Math.multiplyExact(nums1.length(), nums2.length());
+        }
+
+        // The kth smallest product, k from 1 to size(), counting on the common pool
+        public long kth(long k) {
+            return kth(k, ForkJoinPool.commonPool());
+        }
+
+        // The kth smallest product, k from 1 to size(), counting on the given pool
+        public long kth(long k, ForkJoinPool pool) {
+            if (k < 1 || k > size()) throw new IllegalArgumentException("k must be between 1 and " + size() + ": " + k);
+            long below = min - 1, hi = max;      // Invariant: count(below) < k <= count(hi)
+            long countBelow = 0, countHi = size();
+
+            while (countHi - countBelow > COLLECT_LIMIT) {
+                if (hi - below == 1) return hi; // Only one value left
+                for (long p : pivots(k - countBelow, countHi - countBelow, below, hi)) {
+                    if (p <= below || p >= hi) p = below + ((hi - below) >>> 1); // Halve the range instead
+                    long c = count(p, pool);
+                    if (c >= k) { // Answer is <= p
+                        hi = p;
+                        countHi = c;
+                    } else {      // Answer is > p
+                        below = p;
+                        countBelow = c;
+                    }
+                    if (countHi - countBelow <= COLLECT_LIMIT) break;
+                }
+            }
+
+            // Few candidates left: collect them, a block of rows at a time, and pick the (k - countBelow)th
+            long[] candidates = new long[(int) (countHi - countBelow)];
+            long[] rowsBelow = new long[BLOCK], rowsHi = new long[BLOCK];
+            long n = nums2.length();
+            int c = 0;
+            for (long from = 0; from < nums1.length(); from += BLOCK) {
+                long to = Math.min(nums1.length(), from + BLOCK);
+                countRows(below, from, to, rowsBelow);
+                countRows(hi, from, to, rowsHi);
+                for (long i = from; i < to; i++) {
+                    long x = nums1.get(i);
+                    int r = (int) (i - from);
+                    long first = x >= 0 ? rowsBelow[r] : n - rowsHi[r]; // Rows of negative x count from the end
+                    long last = x >= 0 ? rowsHi[r] : n - rowsBelow[r];
+                    for (long j = first; j < last; j++) candidates[c++] = x * nums2.get(j);
+                }
+            }
+            return ProductQuery.quickSelect(candidates, (int) (k - countBelow - 1));
+        }
+
+        // Two products around rank 'rank' of the 'total' products in (below, hi], taken from a uniform
+        // sample of all products; just hi (so the midpoint is used) when too few would fall in (below, hi]
+        private long[] pivots(long rank, long total, long below, long hi) {
+            double share = (double) total / size(); // Expected share of the draws that are kept
+            if (share * MAX_DRAWS < MIN_SAMPLE) return new long[]{hi};
+            int draws = (int) Math.min(MAX_DRAWS, Math.ceil(1.1 * SAMPLE_SIZE / share));
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long m = nums1.length(), n = nums2.length();
+            long[] sample = new long[SAMPLE_SIZE];
+            int kept = 0;
+            for (int draw = 0; draw < draws && kept < SAMPLE_SIZE; draw++) {
+                long v = (long) nums1.get(random.nextLong(m)) * nums2.get(random.nextLong(n));
+                if (v > below && v <= hi) sample[kept++] = v;
+            }
+            if (kept < MIN_SAMPLE) return new long[]{hi}; // Replaced by the midpoint
+
+            // Expected position of the answer in the sample, widened by three standard deviations
+            Arrays.sort(sample, 0, kept);
+            double f = (double) rank / total;
+            double margin = 3 * Math.sqrt(kept * f * (1 - f)) + 1;
+            int lowRank = (int) Math.max(0, Math.floor(f * kept - margin));
+            int highRank = (int) Math.min(kept - 1, Math.ceil(f * kept + margin));
+            return new long[]{sample[lowRank], sample[highRank]};
+        }
+
+        // Number of products <= p
+        public long count(long p, ForkJoinPool pool) {
+            return pool.invoke(new MappedCountTask(this, p, 0, nums1.length()));
+        }
+
+        // Number of products <= p in rows nums1[from..to), and each row's count in rows[i - from] if
+        // rows != null. The same sweep as ProductQuery.countRows, with long indices.
+        long countRows(long p, long from, long to, long[] rows) {
+            long n = nums2.length();
+            long pos1 = neg1 + zero1, pos2 = neg2 + zero2; // Where the positive parts start
+            long zeros = p >= 0 ? zero2 : 0;                // Products with a zero y that are <= p
+            long cnt = 0;
+
+            // Negative x: a suffix of the negative y and a suffix of the positive y qualify
+            long start = from, end = Math.min(to, neg1);
+            if (start < end) {
+                long jNeg = firstIndex(nums1.get(start), p, 0, neg2, true);
+                long jPos = firstIndex(nums1.get(start), p, pos2, n, true);
+                for (long i = start; i < end; i++) {
+                    long x = nums1.get(i);
+                    while (jNeg > 0 && x * nums2.get(jNeg - 1) <= p) jNeg--;
+                    while (jPos < n && x * nums2.get(jPos) > p) jPos++;
+                    long c = (neg2 - jNeg) + zeros + (n - jPos);
+                    cnt += c;
+                    if (rows != null) rows[(int) (i - from)] = c;
+                }
+            }
+
+            // Zero x: every product is 0
+            start = Math.max(from, neg1);
+            end = Math.min(to, pos1);
+            if (start < end) {
+                long c = p >= 0 ? n : 0;
+                cnt += c * (end - start);
+                if (rows != null) Arrays.fill(rows, (int) (start - from), (int) (end - from), c);
+            }
+
+            // Positive x: a prefix of the negative y and a prefix of the positive y qualify
+            start = Math.max(from, pos1);
+            end = to;
+            if (start < end) {
+                long jNeg = firstIndex(nums1.get(start), p, 0, neg2, false);
+                long jPos = firstIndex(nums1.get(start), p, pos2, n, false);
+                for (long i = start; i < end; i++) {
+                    long x = nums1.get(i);
+                    while (jNeg < neg2 && x * nums2.get(jNeg) <= p) jNeg++;
+                    while (jPos > pos2 && x * nums2.get(jPos - 1) > p) jPos--;
+                    long c = jNeg + zeros + (jPos - pos2);
+                    cnt += c;
+                    if (rows != null) rows[(int) (i - from)] = c;
+                }
+            }
+            return cnt;
+        }
+
+        // First j in [l, r) where x * nums2[j] <= p (atMost) or > p (!atMost). r if none.
+        private long firstIndex(long x, long p, long l, long r, boolean atMost) {
+            while (l < r) {
+                long mid = (l + r) >>> 1;
+                if ((x * nums2.get(mid) <= p) == atMost) r = mid;
+                else l = mid + 1;
+            }
+            return l;
+        }
+    }
+
+    // Counts the products <= p for a range of rows of a MappedProductQuery, like CountTask
+    private static final class MappedCountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private static final long THRESHOLD = 1 << 20; // Ranges this small are counted directly
+
+        private final MappedProductQuery query;
+        private final long p;
+        private final long from, to;
+
+        MappedCountTask(MappedProductQuery query, long p, long from, long to) {
+            this.query = query;
+            this.p = p;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= THRESHOLD) return query.countRows(p, from, to, null);
+            long mid = (from + to) >>> 1;
+            MappedCountTask left = new MappedCountTask(query, p, from, mid);
+            left.fork();
+            long right = new MappedCountTask(query, p, mid, to).compute();
+            return right + left.join();
+        }
+    }
+
+    // How an element a of nums1 and an element b of nums2 are combined. For every fixed a the
+    // result must be monotone in b, growing or shrinking as increasing(a) says.
+    public interface Combiner {
+        Combiner SUM = of((a, b) -> a + b, a -> true);
+        Combiner DIFFERENCE = of((a, b) -> a - b, a -> false);
+        Combiner PRODUCT = of((a, b) -> a * b, a -> a >= 0);
+
+        long combine(long a, long b);
+
+        // True if combine(a, b) never decreases as b grows, false if it never increases
+        boolean increasing(long a);
+
+        static Combiner of(LongBinaryOperator combine, LongPredicate increasing) {
+            return new Combiner() {
+                @Override
+                public long combine(long a, long b) {
+                    return combine.applyAsLong(a, b);
+                }
+
+                @Override
+                public boolean increasing(long a) {
+                    return increasing.test(a);
+                }
+            };
+        }
+    }
+
+    // One combination nums1[i] (+) nums2[j] and its value
+    public static final class Combination {
+        public final int i, j;
+        public final long value;
+
+        Combination(int i, int j, long value) {
+            this.i = i;
+            this.j = j;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + i + ", " + j + "): " + value;
+        }
+    }
+
+    // kth smallest of combine(nums1[i], nums2[j]) over two sorted arrays, for any Combiner.
+    // Same structure as ProductQuery's original algorithm: binary search on the value, counting
+    // with one binary search of nums2 per element of nums1 (each row is monotone in j).
+    // Immutable and safe to use from many threads. For products, ProductQuery is faster.
+    public static final class PairwiseQuery {
+        private final int[] nums1; // Copy of the first sorted array
+        private final int[] nums2; // Copy of the second sorted array
+        private final Combiner combiner;
+        private final long min;    // Smallest combination
+        private final long max;    // Largest combination
+
+        public PairwiseQuery(int[] nums1, int[] nums2, Combiner combiner) {
+            if (nums1.length == 0 || nums2.length == 0) throw new IllegalArgumentException("Both arrays must be non-empty");
+            this.nums1 = nums1.clone();
+            this.nums2 = nums2.clone();
+            this.combiner = combiner;
+
+            // Each row is monotone, so its extremes are at the two ends of nums2
+            long lo = Long.MAX_VALUE, hi = Long.MIN_VALUE;
+            for (int a : this.nums1) {
+                long first = combiner.combine(a, this.nums2[0]);
+                long last = combiner.combine(a, this.nums2[this.nums2.length - 1]);
+                lo = Math.min(lo, Math.min(first, last));
+                hi = Math.max(hi, Math.max(first, last));
+            }
+            this.min = lo;
+            this.max = hi;
+        }
+
+        // Number of combinations, m * n
+        public long size() {
+            return (long) nums1.length * nums2.length;
+        }
+
+        // The kth smallest combination, k from 1 to size()
+        public long kth(long k) {
+            if (k < 1 || k > size()) throw new IllegalArgumentException("k must be between 1 and " + size() + ": " + k);
+            long l = min, r = max;
+            while (l < r) {
+                long mid = l + ((r - l) >> 1); // Midpoint of the current range, written so it cannot overflow
+                if (count(mid) >= k) { // If the number of combinations <= mid is >= k
+                    r = mid; // Narrow the search to the lower half
+                } else {
+                    l = mid + 1; // Narrow the search to the upper half
+                }
+            }
+            return l;
+        }
+
+        // Number of combinations <= p
+        long count(long p) {
+            long cnt = 0;
+            int n = nums2.length;
+            for (int a : nums1) {
+                boolean increasing = combiner.increasing(a);
+                // First j where the row passes p (> p when increasing, <= p when decreasing)
                 int l = 0, r = n;
                 while (l < r) {
-                    int mid = (l + r) >> 1; // Find the middle index of nums2
-                    if ((long) x * nums2[mid] <= p) { // If the product is <= p
-                        r = mid; // Narrow the search to the left side
-                    } else {
-                        l = mid + 1; // Narrow the search to the right side
-                    }
+                    int mid = (l + r) >>> 1;
+                    long value = combiner.combine(a, nums2[mid]);
+                    if (increasing ? value > p : value <= p) r = mid;
+                    else l = mid + 1;
                 }
-                cnt += n - l; // Add the count of valid products for negative x
-            } else if (p >= 0) { // If x is 0 and p >= 0
-                cnt += n; // All elements in nums2 contribute to valid products
+                cnt += increasing ? l : n - l; // A prefix of the row when increasing, a suffix otherwise
             }
+            return cnt;
+        }
+
+        // All combinations in ascending order of value (ties by i, then in the row's ascending
+        // direction: j up when increasing(a), j down otherwise), produced lazily.
+        // Frontier: a heap with the next unread element of every row, so only O(m) are held
+        // at a time and taking the first k costs O(m + k log m).
+        public Iterator<Combination> ascending() {
+            int m = nums1.length, n = nums2.length;
+            PriorityQueue<Combination> frontier = new PriorityQueue<>(m, Comparator
+                    .comparingLong((Combination c) -> c.value).thenComparingInt(c -> c.i).thenComparingInt(c -> c.j));
+            for (int i = 0; i < m; i++) frontier.add(at(i, firstColumn(i)));
+
+            return new Iterator<Combination>() {
+                @Override
+                public boolean hasNext() {
+                    return !frontier.isEmpty();
+                }
+
+                @Override
+                public Combination next() {
+                    Combination smallest = frontier.poll();
+                    if (smallest == null) throw new NoSuchElementException();
+                    // The next element of the same row, in the row's ascending direction
+                    int j = combiner.increasing(nums1[smallest.i]) ? smallest.j + 1 : smallest.j - 1;
+                    if (j >= 0 && j < n) frontier.add(at(smallest.i, j));
+                    return smallest;
+                }
+            };
+        }
+
+        // The k smallest combinations, in ascending order
+        public List<Combination> smallest(int k) {
+            List<Combination> result = new ArrayList<>();
+            Iterator<Combination> it = ascending();
+            while (result.size() < k && it.hasNext()) result.add(it.next());
+            return result;
+        }
+
+        // Column of the smallest value in row i
+        private int firstColumn(int i) {
+            return combiner.increasing(nums1[i]) ? 0 : nums2.length - 1;
         }
 
-        return cnt; // Return the total count of valid products
+        private Combination at(int i, int j) {
+            return new Combination(i, j, combiner.combine(nums1[i], nums2[j]));
+        }
     }
 
     // Main method to test the kthSmallestProduct function
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         KthSmallestProduct kthSmallestProduct = new KthSmallestProduct(); // Create an instance of the class
 
         // Test Case 1
@@ -104,9 +1116,90 @@ public class KthSmallestProduct { // Class to find the kth smallest product of t
 
         // Test Case 2
         System.out.println(kthSmallestProduct.kthSmallestProduct(new int[]{-4, -2, 0, 3}, new int[]{2, 4}, 6)); // Expected output: 0
+
+        // Test Case 3: one query object, many k (products: -16 -8 -8 -4 0 0 6 12)
+        ProductQuery query = new ProductQuery(new int[]{-4, -2, 0, 3}, new int[]{2, 4});
+        System.out.println(Arrays.toString(query.kth(new long[]{8, 1, 5, 3, 6}))); // Expected output: [12, -16, 0, -8, 0]
+
+        // Test Case 4: the three ways of counting agree
+        Random random = new Random(42);
+        ProductQuery large = new ProductQuery(sortedRandom(random, 100_000), sortedRandom(random, 50_000));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        boolean same = true;
+        for (int i = 0; i < 20; i++) {
+            long p = random.nextLong() >> 3;
+            long expected = large.countBinarySearch(p);
+            same &= large.count(p) == expected && large.countParallel(p, pool) == expected;
+        }
+        System.out.println("Counts agree: " + same); // Expected output: true
+
+        // Test Case 5: sums and differences, and the smallest products one at a time
+        PairwiseQuery sums = new PairwiseQuery(new int[]{1, 3, 5}, new int[]{2, 4}, Combiner.SUM);           // 3 5 5 7 7 9
+        PairwiseQuery differences = new PairwiseQuery(new int[]{1, 3, 5}, new int[]{2, 4}, Combiner.DIFFERENCE); // -3 -1 -1 1 1 3
+        System.out.println(sums.kth(4) + " " + differences.kth(1) + " " + differences.kth(6)); // Expected output: 7 -3 3
+        PairwiseQuery products = new PairwiseQuery(new int[]{-4, -2, 0, 3}, new int[]{2, 4}, Combiner.PRODUCT);
+        System.out.println(products.smallest(3)); // Expected output: [(0, 1): -16, (0, 0): -8, (1, 1): -8]
+
+        // Test Case 6: long inputs whose products need more than 64 bits
+        WideProductQuery wide = new WideProductQuery(new long[]{-4_000_000_000L, 3_000_000_000L}, new long[]{2, 9_000_000_000_000_000_000L});
+        System.out.println(wide.kth(1) + " " + wide.kth(2) + " " + wide.kth(4)); // Expected output: -36000000000000000000000000000 -8000000000 27000000000000000000000000000
+
+        // Test Case 7: the same query over memory-mapped column files
+        Path file1 = Files.createTempFile("nums1", ".col"), file2 = Files.createTempFile("nums2", ".col");
+        try {
+            int[] column1 = sortedRandom(random, 30_000), column2 = sortedRandom(random, 20_000);
+            IntColumn.write(file1, column1);
+            IntColumn.write(file2, column2);
+            MappedProductQuery mapped = new MappedProductQuery(IntColumn.map(file1), IntColumn.map(file2));
+            ProductQuery inMemory = new ProductQuery(column1, column2);
+            boolean agree = true;
+            for (int i = 0; i < 10; i++) {
+                long k = 1 + random.nextLong(mapped.size());
+                agree &= mapped.kth(k, pool) == inMemory.kth(k);
+            }
+            System.out.println("Mapped columns agree: " + agree); // Expected output: true
+        } finally {
+            Files.deleteIfExists(file1);
+            Files.deleteIfExists(file2);
+        }
+
+        if (args.length > 0 && args[0].equals("bench")) {
+            // Queries on 10^6-element arrays with each way of counting (best of 3 runs, different k)
+            ProductQuery big = new ProductQuery(sortedRandom(random, 1_000_000), sortedRandom(random, 1_000_000));
+            long[] ks = {big.size() / 3, big.size() / 2, big.size() / 5};
+            System.out.printf("Binary search over the range, binary search count: %d ms%n", bestMillis(ks, big::kthBinarySearch));
+            System.out.printf("Sampled narrowing, two-pointer count: %d ms%n", bestMillis(ks, big::kth));
+            System.out.printf("Sampled narrowing, parallel count (%d threads): %d ms%n", pool.getParallelism(), bestMillis(ks, k -> big.kth(k, pool)));
+        }
+        pool.shutdown();
+    }
+
+    // Fastest single query among ks, in milliseconds
+    private static long bestMillis(long[] ks, LongUnaryOperator query) {
+        long best = Long.MAX_VALUE;
+        for (long k : ks) {
+            long start = System.nanoTime();
+            query.applyAsLong(k);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000_000;
+    }
+
+    // n random ints (positive and negative), sorted
+    private static int[] sortedRandom(Random random, int n) {
+        int[] nums = new int[n];
+        for (int i = 0; i < n; i++) nums[i] = random.nextInt();
+        Arrays.sort(nums);
+        return nums;
     }
 }
 
 // Output
 // 8
-// 0
\ No newline at end of file
+// 0
+// [12, -16, 0, -8, 0]
+// Counts agree: true
+// 7 -3 3
+// [(0, 1): -16, (0, 0): -8, (1, 1): -8]
+// -36000000000000000000000000000 -8000000000 27000000000000000000000000000
+// Mapped columns agree: true
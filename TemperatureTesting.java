@@ -6,6 +6,54 @@ public class TemperatureTesting { // Class to determine the minimum tests needed
 
     // Method to compute the least number of tests required
     public static int minMeasurements(int k, int n) {
+        return (int) minMeasurements(k, (long) n); // Never more than n tests, so it fits in an int
+    }
+
+    // Least number of tests for up to 10^18 levels and more, without a table.
+    // With k samples and m tests we can examine f(m, k) = C(m, 1) + C(m, 2) + ... + C(m, k) levels
+    // (the solution of the table's recurrence), and f grows with m, so binary search for the
+    // smallest m with f(m, k) >= n. O(k log n) time, O(1) memory.
+    public static long minMeasurements(int k, long n) {
+        if (n <= 0) return 0; // Nothing to examine
+        if (k < 1) throw new IllegalArgumentException("Need at least one sample: " + k);
+
+        long lo = 1, hi = n; // n tests always suffice (one level per test)
+        while (lo < hi) {
+            long mid = lo + ((hi - lo) >> 1);
+            if (levels(mid, k, n) >= n) hi = mid; // mid tests are enough
+            else lo = mid + 1;                     // More tests are needed
+        }
+        return lo;
+    }
+
+    // f(m, k) = C(m, 1) + ... + C(m, k), or cap if it is at least cap (so nothing overflows)
+    private static long levels(long m, int k, long cap) {
+        long sum = 0;
+        long term = 1; // C(m, i - 1)
+        for (int i = 1; i <= k && i <= m; i++) {
+            // C(m, i) = C(m, i - 1) * (m - i + 1) / i, divided first so the product stays exact:
+            // i / g divides m - i + 1 because C(m, i) is a whole number
+            long g = gcd(term, i);
+            long a = term / g, b = (m - i + 1) / (i / g);
+            if (a > cap / b) return cap; // This term alone is at least cap
+            term = a * b;
+            if (term >= cap - sum) return cap; // Compared this way so the sum cannot overflow
+            sum += term;
+        }
+        return sum;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // The original table version: O(k * n) memory, used to check the results
+    static int minMeasurementsTable(int k, int n) {
         // If there's only one sample (k = 1), each temperature must be checked one by one.
         if (k == 1) return n;
 
@@ -40,7 +88,16 @@ public class TemperatureTesting { // Class to determine the minimum tests needed
         System.out.println(minMeasurements(1, 2));  // Expected output: 2
         System.out.println(minMeasurements(2, 6));  // Expected output: 3
         System.out.println(minMeasurements(3, 14)); // Expected output: 4
+        System.out.println(minMeasurements(2, 1_000_000_000_000_000_000L)); // Expected output: 1414213562
+        System.out.println(minMeasurements(64, 1_000_000_000_000_000_000L)); // Expected output: 60
+
+        // The binomial sum gives the same answers as the table
+        boolean same = true;
+        for (int k = 1; k <= 10; k++) {
+            for (int n = 0; n <= 300; n++) same &= minMeasurements(k, n) == minMeasurementsTable(k, n);
+        }
+        System.out.println("Matches the table: " + same); // Expected output: true
     }
 }
 
-// Output: 2  3  4
\ No newline at end of file
+// Output: 2  3  4  1414213562  60  Matches the table: true
\ No newline at end of file
@@ -7,30 +7,91 @@ Task: Find and show the top 3 hashtags from tweets, sorted by how often they app
 
 Steps:
 
-1. Store tweets in a list of maps (user_id, tweet_id, tweet, tweet_date).
-2. Pick out hashtags from tweets and count how many times each appears using a HashMap.
-3. Sort hashtags by count (highest first). If two hashtags have the same count, sort them alphabetically.
+1. Read tweets as line-delimited records (user_id, tweet_id, tweet, tweet_date separated by tabs).
+2. Pick out hashtags from each tweet with a single scan and count them in striped counters.
+3. Select the top hashtags by count (highest first). If two hashtags have the same count, sort them alphabetically.
 4. Show the top 3 hashtags in a table format.
 
 How it works:
 
-- Finding Hashtags: Look for words starting with #.
-- Counting: Keep track of how many times each hashtag appears.
-- Sorting: First by count (highest to lowest), then by name (A to Z).
+- Finding Hashtags: Look for words starting with #. The scan walks the tweet once and never
+  builds a String for a hashtag that has been seen before.
+- Counting: The counter is split into stripes. Each stripe is an open-addressing table of
+  hashtag -> long count with its own lock, so many threads can count at the same time.
+- Streaming: Records are pulled from an Iterator or InputStream in small batches, so memory
+  only grows with the number of different hashtags, not with the number of tweets.
+- Windows: In windowed mode each day (or hour, or minute) of tweet_date gets its own count
+  bucket in a ring of N buckets. The running total is updated as tweets arrive, and when a
+  bucket falls out of the window its counts are subtracted, so history is never rescanned.
+- Bulk files: A tweet dump is memory-mapped and cut into line-aligned chunks. Worker threads
+  scan the hashtags straight from the mapped bytes into their own counters, which are merged
+  at the end. Run "java TrendingHashtags tweets.tsv" (or .csv) to load a file and see MB/s.
+- Approximate: A Count-Min Sketch plus a small heap of candidate hashtags finds the heavy
+  hitters in fixed memory, with a configurable error bound (epsilon) and confidence (delta).
+- Selecting: A min-heap of size N keeps the N best hashtags seen so far, so only those N are
+  ever sorted. For large N every stripe selects its own top N in parallel and the results are
+  merged. Order: first by count (highest to lowest), then by name (A to Z).
 - Showing: Print the top 3 hashtags in a table.
 
 Efficiency:
-- Time: O(n * m), where n = number of tweets, m = words per tweet.
+- Time: O(c), where c = total characters of all tweets (split across the worker threads).
+- Top N: O(k log N) instead of sorting all k unique hashtags.
 - Space: O(k), where k = unique hashtags.
 */
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*; // Bring in Java utilities like List and Map for handling tweets.
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjLongConsumer;
 
 public class TrendingHashtags {
-    public static void main(String[] args) {
+    private static final char FIELD_SEPARATOR = '\t'; // Separator between the columns of a record
+    private static final int TWEET_FIELD = 2;          // Column index of the tweet text
+    private static final int DATE_FIELD = 3;           // Column index of the tweet date
+    private static final int BATCH_SIZE = 1024;         // Records handed to a worker at once
+    private static final int PARALLEL_TOP_K = 1024;     // From this N on, stripes select in parallel
+    private static final int CHUNK_SIZE = 64 << 20;     // Bytes of a file mapped and scanned at once
+
+    private final HashtagCounter counts; // Shared counter updated by all worker threads
+    private final HashtagSink countOne;  // Scanner callback that adds 1 to a hashtag
+
+    // Create an engine with a few stripes per core so threads rarely wait for each other.
+    public TrendingHashtags() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    // Create an engine with a given number of counter stripes (rounded up to a power of two).
+    public TrendingHashtags(int stripes) {
+        this.counts = new HashtagCounter(stripes);
+        this.countOne = (text, from, to, hash) -> counts.add(text, from, to, hash, 1);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // With a file argument, bulk load a tweet dump (.csv or tab separated) instead of the samples.
+        if (args.length > 0) {
+            char separator = args[0].endsWith(".csv") ? ',' : FIELD_SEPARATOR;
+            TrendingHashtags fromFile = new TrendingHashtags();
+            LoadStats stats = fromFile.ingestFile(Paths.get(args[0]), separator,
+                    Runtime.getRuntime().availableProcessors());
+            printTable(fromFile.topHashtags(3));
+            System.out.println(stats);
+            return;
+        }
+
         // Sample input data: user_id, tweet_id, tweet, tweet_date
-        // Create a list to store tweet data as maps.
-        List<Map<String, String>> tweets = new ArrayList<>();
+        // Create a list of tab separated records, one line per tweet.
+        List<String> tweets = new ArrayList<>();
 
         // Add sample tweets to the list using the createTweet helper method.
         tweets.add(createTweet("135", "13", "Enjoying a great start to the day. #HappyDay #MorningVibes", "2024-02-01"));
@@ -41,52 +102,323 @@ public class TrendingHashtags {
         tweets.add(createTweet("140", "18", "Innovation drives us. #TechLife #FutureTech", "2024-02-07"));
         tweets.add(createTweet("141", "19", "Connecting with nature's serenity. #Nature #Peaceful", "2024-02-09"));
 
-        // Count hashtag mentions
-        // Create a map to store hashtags and their counts.
-        Map<String, Integer> hashtagCounts = new HashMap<>();
+        // Count hashtag mentions using all available cores.
+        TrendingHashtags trending = new TrendingHashtags();
+        trending.ingest(tweets.iterator(), Runtime.getRuntime().availableProcessors());
 
-        // Iterate through each tweet in the list.
-        for (Map<String, String> tweet : tweets) {
-            // Get the tweet text from the current tweet.
-            String tweetText = tweet.get("tweet");
+        // Output the top 3 hashtags in the redesigned table format
+        printTable(trending.topHashtags(3));
+
+        // Approximate mode: fixed memory, counts are at most 1% of all hashtags too high (99% sure).
+        ApproximateTrending approximate = new ApproximateTrending(0.01, 0.01, 10);
+        for (String tweet : tweets) approximate.addRecord(tweet);
+        System.out.println();
+        System.out.println("Approximate top 3:");
+        printTable(approximate.topHashtags(3));
+        System.out.println(approximate.compareWith(trending, 3));
+
+        // Windowed mode: only the last 5 days (one bucket per day) count as trending.
+        WindowedTrending lastFiveDays = new WindowedTrending(5, ChronoUnit.DAYS);
+        for (String tweet : tweets) lastFiveDays.addRecord(tweet);
+        System.out.println();
+        System.out.println("Trending over the last 5 days:");
+        printTable(lastFiveDays.topHashtags(3));
+    }
+
+    // Count the hashtags of every record in the stream, one line per record.
+    public void ingest(InputStream in, int threads) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            ingest(reader.lines().iterator(), threads);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // Report read errors as a normal IOException
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while counting hashtags");
+        }
+    }
+
+    // Count the hashtags of every record, splitting the work across 'threads' workers.
+    // If counting a batch fails, that failure is rethrown here and the counts are incomplete.
+    public void ingest(Iterator<? extends CharSequence> records, int threads) throws InterruptedException {
+        if (threads <= 1) {
+            // Single thread: no batching or hand-off needed.
+            while (records.hasNext()) addRecord(records.next());
+            return;
+        }
 
-            // Split the tweet text into individual words.
-            String[] words = tweetText.split(" ");
+        // A small bounded queue keeps at most a few batches in memory. When it is full,
+        // the reading thread counts the batch itself instead of reading further ahead.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), daemonThreads(), new ThreadPoolExecutor.CallerRunsPolicy());
 
-            // Iterate through each word in the tweet.
-            for (String word : words) {
-                // Check if the word starts with a hashtag (#).
-                if (word.startsWith("#")) {
-                    // Update the count for the hashtag in the map.
-                    hashtagCounts.put(word, hashtagCounts.getOrDefault(word, 0) + 1);
+        // Batches not yet checked, oldest first. Finished ones are checked as we go,
+        // so a failure is seen early and the list stays short.
+        Deque<Future<?>> pending = new ArrayDeque<>();
+        try {
+            while (records.hasNext()) {
+                // Read the next batch of records on the calling thread.
+                CharSequence[] batch = new CharSequence[BATCH_SIZE];
+                int size = 0;
+                while (size < BATCH_SIZE && records.hasNext()) {
+                    batch[size++] = records.next();
                 }
+
+                // Hand the batch to a worker thread.
+                int batchSize = size;
+                pending.add(executor.submit(() -> {
+                    for (int i = 0; i < batchSize; i++) addRecord(batch[i]);
+                }));
+                while (!pending.isEmpty() && pending.peekFirst().isDone()) awaitBatch(pending.pollFirst());
             }
+            while (!pending.isEmpty()) awaitBatch(pending.pollFirst());
+        } finally {
+            executor.shutdownNow(); // Every batch has finished unless we are leaving on an error
+        }
+    }
+
+    // Wait for one batch and rethrow whatever it failed with.
+    private static void awaitBatch(Future<?> batch) throws InterruptedException {
+        try {
+            batch.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Failed to count a batch of records", cause);
         }
+    }
 
-        // Sort by count descending, then by hashtag name
-        // Convert the map entries to a list for sorting.
-        List<Map.Entry<String, Integer>> sortedHashtags = new ArrayList<>(hashtagCounts.entrySet());
+    // Thread factory for the worker pools: daemon threads, so the program can exit automatically.
+    private static ThreadFactory daemonThreads() {
+        return r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        };
+    }
 
-        // Sort the list of hashtags by count in descending order.
-        // If counts are equal, sort alphabetically by hashtag name.
-        sortedHashtags.sort((a, b) -> {
-            int countCompare = b.getValue().compareTo(a.getValue()); // Compare counts in descending order.
-            if (countCompare != 0) return countCompare;
-            return a.getKey().compareTo(b.getKey()); // If counts are equal, compare hashtag names.
-        });
+    // Bulk load a file of records (one per line) by memory-mapping it.
+    // The file is cut into line-aligned chunks; each worker scans chunks straight from the
+    // mapped bytes into its own byte-keyed counter, and the counters are merged at the end,
+    // so a String is only built once per distinct hashtag per worker.
+    // 'separator' is ',' for CSV (the tweet column may be double-quoted) or '\t' for TSV.
+    public LoadStats ingestFile(Path file, char separator, int threads) throws IOException {
+        long startNanos = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = lineAlignedChunks(channel);
+            AtomicInteger nextChunk = new AtomicInteger();
 
-        // Output the top 3 hashtags in the redesigned table format
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), daemonThreads());
+            try {
+                List<Future<?>> workers = new ArrayList<>();
+                for (int i = 0; i < Math.max(1, threads); i++) {
+                    workers.add(executor.submit(() -> {
+                        ByteCounter local = new ByteCounter();
+                        // Claim chunks until none are left.
+                        for (int c = nextChunk.getAndIncrement(); c < bounds.length - 1; c = nextChunk.getAndIncrement()) {
+                            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                                    bounds[c], bounds[c + 1] - bounds[c]);
+                            scanChunk(chunk, (byte) separator, local);
+                        }
+                        // Merge this worker's counts into the shared counter.
+                        local.forEach((tag, count) -> counts.add(tag, 0, tag.length(), tag.hashCode(), count));
+                        return null;
+                    }));
+                }
+                for (Future<?> worker : workers) worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while loading " + file);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException("Failed to load " + file, e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+            return new LoadStats(channel.size(), System.nanoTime() - startNanos);
+        }
+    }
+
+    // Chunk boundaries of about CHUNK_SIZE bytes, each moved forward to the start of a line.
+    private static long[] lineAlignedChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = CHUNK_SIZE;
+        while (pos < size) {
+            // Read forward from the chunk boundary until the end of the current line.
+            long lineStart = -1;
+            for (long at = pos - 1; lineStart < 0 && at < size; at += probe.limit()) {
+                probe.clear();
+                if (channel.read(probe, at) <= 0) break;
+                probe.flip();
+                for (int i = 0; i < probe.limit(); i++) {
+                    if (probe.get(i) == '\n') {
+                        lineStart = at + i + 1;
+                        break;
+                    }
+                }
+            }
+            if (lineStart < 0 || lineStart >= size) break; // The last line runs to the end of the file
+            bounds.add(lineStart);
+            pos = lineStart + CHUNK_SIZE;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+
+    // Count the hashtags of every line of a mapped chunk.
+    private static void scanChunk(ByteBuffer chunk, byte separator, ByteCounter counter) {
+        int limit = chunk.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && chunk.get(lineEnd) != '\n') lineEnd++;
+            int end = (lineEnd > lineStart && chunk.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+
+            // Skip the columns before the tweet text.
+            int start = lineStart;
+            for (int field = 0; field < TWEET_FIELD && start <= end; field++) {
+                start = skipField(chunk, start, end, separator) + 1;
+            }
+            if (start <= end) {
+                int tweetEnd = skipField(chunk, start, end, separator);
+                if (start < tweetEnd && chunk.get(start) == '"') {
+                    // Quoted CSV column: the text is between the quotes.
+                    scanHashtagBytes(chunk, start + 1, tweetEnd - 1, counter);
+                } else {
+                    scanHashtagBytes(chunk, start, tweetEnd, counter);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    // Position of the separator that ends the column starting at 'start' (or 'end').
+    // A column that starts with a double quote runs to its closing quote ("" is an escaped quote).
+    private static int skipField(ByteBuffer chunk, int start, int end, byte separator) {
+        int i = start;
+        if (i < end && chunk.get(i) == '"') {
+            i++;
+            while (i < end) {
+                if (chunk.get(i) == '"') {
+                    if (i + 1 < end && chunk.get(i + 1) == '"') {
+                        i += 2; // Escaped quote inside the column
+                        continue;
+                    }
+                    i++; // Closing quote
+                    break;
+                }
+                i++;
+            }
+        }
+        while (i < end && chunk.get(i) != separator) i++;
+        return i;
+    }
+
+    // Same rule as scanHashtags, but over raw bytes: a hashtag is a space separated word starting with '#'.
+    private static void scanHashtagBytes(ByteBuffer chunk, int from, int to, ByteCounter counter) {
+        int i = from;
+        while (i < to) {
+            if (chunk.get(i) == ' ') {
+                i++;
+                continue;
+            }
+            int wordStart = i;
+            if (chunk.get(i) != '#') {
+                while (i < to && chunk.get(i) != ' ') i++;
+                continue;
+            }
+            int hash = 0;
+            while (i < to && chunk.get(i) != ' ') {
+                hash = 31 * hash + chunk.get(i);
+                i++;
+            }
+            counter.add(chunk, wordStart, i, hash);
+        }
+    }
+
+    // Count the hashtags of one record (user_id, tweet_id, tweet, tweet_date).
+    public void addRecord(CharSequence record) {
+        int start = fieldStart(record, TWEET_FIELD);
+        if (start < 0) return; // Malformed record without a tweet column
+        scanHashtags(record, start, fieldEnd(record, start), countOne);
+    }
+
+    // Count the hashtags of one plain tweet text.
+    public void addTweet(CharSequence tweet) {
+        scanHashtags(tweet, 0, tweet.length(), countOne);
+    }
+
+    // Receives each hashtag found by scanHashtags as text[from, to) plus its String.hashCode.
+    interface HashtagSink {
+        void accept(CharSequence text, int from, int to, int hash);
+    }
+
+    // Walk the text once. A hashtag is a space separated word that starts with '#'.
+    // Its hash is computed during the walk, so counting it needs no substring.
+    static void scanHashtags(CharSequence text, int from, int to, HashtagSink sink) {
+        int i = from;
+        while (i < to) {
+            // Skip the spaces between words.
+            if (text.charAt(i) == ' ') {
+                i++;
+                continue;
+            }
+
+            int wordStart = i;
+            if (text.charAt(i) != '#') {
+                // Not a hashtag: jump to the end of the word.
+                while (i < to && text.charAt(i) != ' ') i++;
+                continue;
+            }
+
+            // Hashtag: hash the characters up to the next space (same formula as String.hashCode).
+            int hash = 0;
+            while (i < to && text.charAt(i) != ' ') {
+                hash = 31 * hash + text.charAt(i);
+                i++;
+            }
+            sink.accept(text, wordStart, i, hash);
+        }
+    }
+
+    // Return the top n hashtags, sorted by count (desc) and then by name (asc).
+    public List<Map.Entry<String, Long>> topHashtags(int n) {
+        return counts.top(n).toList();
+    }
+
+    // Count descending, then hashtag name ascending.
+    static int compareRows(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+        int countCompare = Long.compare(b.getValue(), a.getValue()); // Compare counts in descending order.
+        if (countCompare != 0) return countCompare;
+        return a.getKey().compareTo(b.getKey()); // If counts are equal, compare hashtag names.
+    }
+
+    // Exact count of one hashtag.
+    public long count(String tag) {
+        return counts.get(tag);
+    }
+
+    // Number of different hashtags seen so far.
+    public int distinctHashtags() {
+        return counts.size();
+    }
+
+    // Print hashtag rows in the table format.
+    public static void printTable(List<Map.Entry<String, Long>> rows) {
         // Print the table header.
         System.out.println("+-------------+---------+");
         System.out.println("|   HASHTAG   |  COUNT  |");
         System.out.println("+-------------+---------+");
 
-        // Iterate through the top 3 hashtags (or fewer if there are less than 3).
-        for (int i = 0; i < Math.min(3, sortedHashtags.size()); i++) {
-            // Get the current hashtag and its count.
-            Map.Entry<String, Integer> entry = sortedHashtags.get(i);
-
-            // Print the hashtag and its count in a formatted table row.
+        // Print each hashtag and its count in a formatted table row.
+        for (Map.Entry<String, Long> entry : rows) {
             System.out.printf("| %-11s | %-7d |%n", entry.getKey(), entry.getValue());
         }
 
@@ -94,15 +426,663 @@ public class TrendingHashtags {
         System.out.println("+-------------+---------+");
     }
 
-    // Helper method to create a tweet map
-    // This method creates a map representing a single tweet with user_id, tweet_id, tweet, and tweet_date.
-    private static Map<String, String> createTweet(String userId, String tweetId, String tweet, String tweetDate) {
-        Map<String, String> tweetMap = new HashMap<>(); // Create a new map.
-        tweetMap.put("user_id", userId); // Add user_id to the map.
-        tweetMap.put("tweet_id", tweetId); // Add tweet_id to the map.
-        tweetMap.put("tweet", tweet); // Add tweet text to the map.
-        tweetMap.put("tweet_date", tweetDate); // Add tweet date to the map.
-        return tweetMap; // Return the created map.
+    // Helper method to create a tweet record
+    // This method joins user_id, tweet_id, tweet, and tweet_date into one tab separated line.
+    static String createTweet(String userId, String tweetId, String tweet, String tweetDate) {
+        return userId + FIELD_SEPARATOR + tweetId + FIELD_SEPARATOR + tweet + FIELD_SEPARATOR + tweetDate;
+    }
+
+    // Start of column 'field' in a record, or -1 if the record has fewer columns.
+    static int fieldStart(CharSequence record, int field) {
+        int start = 0;
+        for (int i = 0; i < field; i++) {
+            start = indexOf(record, FIELD_SEPARATOR, start, record.length()) + 1;
+            if (start == 0) return -1;
+        }
+        return start;
+    }
+
+    // End (exclusive) of the column that starts at 'start'.
+    static int fieldEnd(CharSequence record, int start) {
+        int end = indexOf(record, FIELD_SEPARATOR, start, record.length());
+        return end < 0 ? record.length() : end;
+    }
+
+    // Position of the first 'c' in text[from, to), or -1 if there is none.
+    static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    // Trending over the last N time windows (days, hours or minutes) taken from tweet_date.
+    // Each window has its own count bucket in a ring, and 'totals' always holds the sum of
+    // the live buckets. When time moves past a bucket, its counts are subtracted from the
+    // totals and the bucket is reused, which costs O(hashtags in that bucket).
+    public static final class WindowedTrending {
+        private final ChronoUnit unit;   // Width of one window
+        private final Stripe[] buckets;  // Ring of per-window counts, indexed by window % N
+        private final Stripe totals = new Stripe(); // Sum over all live windows
+        private long newestWindow = Long.MIN_VALUE; // Latest window seen so far
+        private long currentWindow;                 // Window of the tweet being scanned
+        private final HashtagSink countOne;         // Adds 1 to a hashtag in currentWindow
+
+        public WindowedTrending(int windows, ChronoUnit unit) {
+            if (windows < 1) throw new IllegalArgumentException("windows must be at least 1");
+            if (unit != ChronoUnit.DAYS && unit != ChronoUnit.HOURS && unit != ChronoUnit.MINUTES) {
+                throw new IllegalArgumentException("unit must be DAYS, HOURS or MINUTES: " + unit);
+            }
+            this.unit = unit;
+            this.buckets = new Stripe[windows];
+            for (int i = 0; i < windows; i++) buckets[i] = new Stripe();
+            this.countOne = (text, from, to, hash) -> {
+                int spread = spread(hash);
+                bucketOf(currentWindow).add(text, from, to, spread, 1);
+                totals.add(text, from, to, spread, 1);
+            };
+        }
+
+        // Count one record (user_id, tweet_id, tweet, tweet_date) in the window of its date.
+        public synchronized void addRecord(CharSequence record) {
+            int tweetStart = fieldStart(record, TWEET_FIELD);
+            int dateStart = fieldStart(record, DATE_FIELD);
+            if (tweetStart < 0 || dateStart < 0) return; // Malformed record
+            add(windowOf(record, dateStart, fieldEnd(record, dateStart)),
+                    record, tweetStart, fieldEnd(record, tweetStart));
+        }
+
+        // Count the hashtags of text[from, to) in the given window.
+        public synchronized void add(long window, CharSequence text, int from, int to) {
+            if (window > newestWindow) advanceTo(window);
+            if (window <= newestWindow - buckets.length) return; // Too old: already out of the window
+            currentWindow = window;
+            scanHashtags(text, from, to, countOne);
+        }
+
+        // Move the window forward, expiring every bucket that falls out of it.
+        private void advanceTo(long window) {
+            if (newestWindow != Long.MIN_VALUE) {
+                // At most N buckets can expire, however far time jumps.
+                long steps = Math.min(window - newestWindow, buckets.length);
+                for (long w = window - steps + 1; w <= window; w++) expire(bucketOf(w));
+            }
+            newestWindow = window;
+        }
+
+        // Subtract a bucket from the totals and empty it.
+        private void expire(Stripe bucket) {
+            bucket.forEach((tag, count) -> totals.add(tag, 0, tag.length(), spread(tag.hashCode()), -count));
+            bucket.clear();
+        }
+
+        private Stripe bucketOf(long window) {
+            return buckets[(int) Math.floorMod(window, (long) buckets.length)];
+        }
+
+        // Top n hashtags over the live windows, by count (desc) and then by name (asc).
+        public synchronized List<Map.Entry<String, Long>> topHashtags(int n) {
+            TopK top = new TopK(n);
+            totals.forEach(top);
+            return top.toList();
+        }
+
+        // Window number of a date "yyyy-MM-dd" with an optional " HH:mm" or "THH:mm" part.
+        long windowOf(CharSequence text, int from, int to) {
+            if (to - from < 10) throw new DateTimeException("Bad tweet_date: " + text);
+            long epochDay = LocalDate.of(digits(text, from, 4), digits(text, from + 5, 2),
+                    digits(text, from + 8, 2)).toEpochDay();
+            boolean hasTime = to - from >= 16;
+            int hour = hasTime ? digits(text, from + 11, 2) : 0;
+            int minute = hasTime ? digits(text, from + 14, 2) : 0;
+            switch (unit) {
+                case DAYS: return epochDay;
+                case HOURS: return epochDay * 24 + hour;
+                default: return (epochDay * 24 + hour) * 60 + minute;
+            }
+        }
+
+        // Parse 'count' decimal digits starting at 'from'.
+        private static int digits(CharSequence text, int from, int count) {
+            int value = 0;
+            for (int i = from; i < from + count; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') throw new DateTimeException("Bad tweet_date: " + text);
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+    }
+
+    // Approximate heavy hitters in fixed memory, for streams with too many distinct hashtags.
+    // A Count-Min Sketch (depth rows of width counters) estimates every hashtag's count; the
+    // estimate is never too low and, with probability 1 - delta, at most epsilon * total too high.
+    // Only the 'candidates' hashtags with the highest estimates are kept by name, in a min-heap,
+    // so a flood of rare (spam) hashtags never grows memory.
+    public static final class ApproximateTrending {
+        private final double epsilon;    // Allowed error as a fraction of all hashtags counted
+        private final int width;         // Counters per sketch row = ceil(e / epsilon)
+        private final int depth;         // Sketch rows = ceil(ln(1 / delta))
+        private final long[] sketch;     // depth rows of width counters, row after row
+        private final String[] heapTags; // Candidate min-heap: smallest estimate at the root
+        private final long[] heapCounts; // Estimate of each candidate
+        private final Stripe positions = new Stripe(); // Candidate hashtag -> heap position + 1
+        private int heapSize;
+        private long total;              // Hashtags counted so far
+        private final HashtagSink countOne = this::offer;
+
+        public ApproximateTrending(double epsilon, double delta, int candidates) {
+            if (!(epsilon > 0 && epsilon < 1)) throw new IllegalArgumentException("epsilon must be in (0, 1)");
+            if (!(delta > 0 && delta < 1)) throw new IllegalArgumentException("delta must be in (0, 1)");
+            if (candidates < 1) throw new IllegalArgumentException("candidates must be at least 1");
+            this.epsilon = epsilon;
+            this.width = (int) Math.ceil(Math.E / epsilon);
+            this.depth = Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+            this.sketch = new long[Math.multiplyExact(width, depth)];
+            this.heapTags = new String[candidates];
+            this.heapCounts = new long[candidates];
+        }
+
+        // Count one record (user_id, tweet_id, tweet, tweet_date).
+        public synchronized void addRecord(CharSequence record) {
+            int start = fieldStart(record, TWEET_FIELD);
+            if (start < 0) return; // Malformed record without a tweet column
+            scanHashtags(record, start, fieldEnd(record, start), countOne);
+        }
+
+        // Count the hashtags of one plain tweet text.
+        public synchronized void addTweet(CharSequence tweet) {
+            scanHashtags(tweet, 0, tweet.length(), countOne);
+        }
+
+        // Count one hashtag in the sketch and update the candidate heap.
+        private void offer(CharSequence text, int from, int to, int hash) {
+            total++;
+
+            // Two hashes give one counter per row (h1 + row * h2).
+            long h = hash * 0x9E3779B97F4A7C15L;
+            h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L;
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+
+            // The estimate is the smallest of the hashtag's counters.
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                estimate = Math.min(estimate, sketch[counter(row, h1, h2)]);
+            }
+            estimate++;
+
+            // Conservative update: only raise counters that are below the new estimate.
+            for (int row = 0; row < depth; row++) {
+                int i = counter(row, h1, h2);
+                if (sketch[i] < estimate) sketch[i] = estimate;
+            }
+
+            int spread = spread(hash);
+            int slot = positions.find(text, from, to, spread);
+            if (slot >= 0) {
+                // Already a candidate: its estimate grew, so it may move down the min-heap.
+                int pos = (int) positions.values[slot] - 1;
+                heapCounts[pos] = estimate;
+                siftDown(pos);
+            } else if (heapSize < heapTags.length) {
+                // Room left: every new hashtag becomes a candidate.
+                String tag = text.subSequence(from, to).toString();
+                positions.add(tag, 0, tag.length(), spread, heapSize + 1);
+                heapTags[heapSize] = tag;
+                heapCounts[heapSize] = estimate;
+                siftUp(heapSize++);
+            } else if (estimate > heapCounts[0]) {
+                // Heavier than the weakest candidate: replace it.
+                positions.removeAt(positions.find(heapTags[0], 0, heapTags[0].length(), spread(heapTags[0].hashCode())));
+                String tag = text.subSequence(from, to).toString();
+                positions.add(tag, 0, tag.length(), spread, 1);
+                heapTags[0] = tag;
+                heapCounts[0] = estimate;
+                siftDown(0);
+            }
+        }
+
+        private int counter(int row, int h1, int h2) {
+            return row * width + Integer.remainderUnsigned(h1 + row * h2, width);
+        }
+
+        // Min-heap order: smaller estimate first; on ties the later name is evicted first.
+        private boolean less(int a, int b) {
+            if (heapCounts[a] != heapCounts[b]) return heapCounts[a] < heapCounts[b];
+            return heapTags[a].compareTo(heapTags[b]) > 0;
+        }
+
+        private void siftUp(int pos) {
+            while (pos > 0) {
+                int parent = (pos - 1) >> 1;
+                if (!less(pos, parent)) break;
+                swap(pos, parent);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int pos) {
+            while (true) {
+                int smallest = pos;
+                int left = 2 * pos + 1;
+                int right = left + 1;
+                if (left < heapSize && less(left, smallest)) smallest = left;
+                if (right < heapSize && less(right, smallest)) smallest = right;
+                if (smallest == pos) return;
+                swap(pos, smallest);
+                pos = smallest;
+            }
+        }
+
+        // Swap two heap entries and record their new positions.
+        private void swap(int a, int b) {
+            String tag = heapTags[a];
+            long count = heapCounts[a];
+            heapTags[a] = heapTags[b];
+            heapCounts[a] = heapCounts[b];
+            heapTags[b] = tag;
+            heapCounts[b] = count;
+            positions.values[positions.find(heapTags[a], 0, heapTags[a].length(), spread(heapTags[a].hashCode()))] = a + 1;
+            positions.values[positions.find(heapTags[b], 0, heapTags[b].length(), spread(heapTags[b].hashCode()))] = b + 1;
+        }
+
+        // Top n candidates by estimated count (desc) and then by name (asc).
+        public synchronized List<Map.Entry<String, Long>> topHashtags(int n) {
+            TopK top = new TopK(n);
+            for (int i = 0; i < heapSize; i++) top.accept(heapTags[i], heapCounts[i]);
+            return top.toList();
+        }
+
+        // Largest amount an estimate may be too high (with probability 1 - delta).
+        public synchronized double errorBound() {
+            return epsilon * total;
+        }
+
+        // Compare the approximate top n with the exact top n of the same tweets.
+        public Accuracy compareWith(TrendingHashtags exact, int n) {
+            List<Map.Entry<String, Long>> approxRows = topHashtags(n);
+            List<Map.Entry<String, Long>> exactRows = exact.topHashtags(n);
+
+            // How many of the exact top n were found, and how far off the estimates are.
+            Set<String> exactTags = new HashSet<>();
+            for (Map.Entry<String, Long> row : exactRows) exactTags.add(row.getKey());
+            int matched = 0;
+            long maxOverestimate = 0;
+            for (Map.Entry<String, Long> row : approxRows) {
+                if (exactTags.contains(row.getKey())) matched++;
+                maxOverestimate = Math.max(maxOverestimate, row.getValue() - exact.count(row.getKey()));
+            }
+            return new Accuracy(exactRows.size(), matched, maxOverestimate, errorBound());
+        }
+    }
+
+    // Result of ApproximateTrending.compareWith.
+    public static final class Accuracy {
+        public final int expected;          // Rows in the exact top n
+        public final int matched;           // Exact top n hashtags also in the approximate top n
+        public final long maxOverestimate;  // Largest estimate - exact count among the approximate rows
+        public final double errorBound;     // epsilon * total, the promised limit for the overestimate
+
+        Accuracy(int expected, int matched, long maxOverestimate, double errorBound) {
+            this.expected = expected;
+            this.matched = matched;
+            this.maxOverestimate = maxOverestimate;
+            this.errorBound = errorBound;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Approximate top %d matches exact: %d/%d (max overestimate %d, bound %.2f)",
+                    expected, matched, expected, maxOverestimate, errorBound);
+        }
+    }
+
+    // Size and speed of one ingestFile call.
+    public static final class LoadStats {
+        public final long bytes;  // File size
+        public final long nanos;  // Wall-clock load time, including the merge
+
+        LoadStats(long bytes, long nanos) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public double megabytesPerSecond() {
+            return (bytes / 1e6) / Math.max(nanos / 1e9, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %.1f MB in %d ms (%.1f MB/s)", bytes / 1e6, nanos / 1_000_000,
+                    megabytesPerSecond());
+        }
+    }
+
+    // Per-worker hashtag -> count table keyed by the raw UTF-8 bytes of the hashtag.
+    // Only used by one thread, so it needs no locking; the keys are decoded once at merge time.
+    static final class ByteCounter {
+        private byte[][] keys = new byte[16][];
+        private int[] hashes = new int[16];
+        private long[] values = new long[16];
+        private int size;
+
+        // Add 1 to the hashtag stored in chunk[from, to) whose byte hash is 'hash'.
+        void add(ByteBuffer chunk, int from, int to, int hash) {
+            int mask = keys.length - 1;
+            int slot = spread(hash) & mask;
+            while (keys[slot] != null) {
+                if (hashes[slot] == hash && bytesEqual(keys[slot], chunk, from, to)) {
+                    values[slot]++;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            // First time this worker sees the hashtag: copy its bytes.
+            byte[] key = new byte[to - from];
+            for (int i = 0; i < key.length; i++) key[i] = chunk.get(from + i);
+            keys[slot] = key;
+            hashes[slot] = hash;
+            values[slot] = 1;
+            if (++size * 4 >= keys.length * 3) resize(); // Keep the load factor below 0.75
+        }
+
+        private void resize() {
+            byte[][] oldKeys = keys;
+            int[] oldHashes = hashes;
+            long[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            hashes = new int[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = spread(oldHashes[i]) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        // Visit every hashtag (decoded from UTF-8) and its count.
+        void forEach(ObjLongConsumer<String> action) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) action.accept(new String(keys[i], StandardCharsets.UTF_8), values[i]);
+            }
+        }
+
+        private static boolean bytesEqual(byte[] key, ByteBuffer chunk, int from, int to) {
+            if (key.length != to - from) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != chunk.get(from + i)) return false;
+            }
+            return true;
+        }
+    }
+
+    // Keeps the best k (hashtag, count) rows offered to it, in O(log k) per row.
+    // The rows sit in a heap with the worst row at the root, so a row that cannot
+    // make the top k is rejected with a single comparison.
+    static final class TopK implements ObjLongConsumer<String> {
+        private final int k;
+        private String[] tags;
+        private long[] counts;
+        private int size;
+
+        TopK(int k) {
+            if (k < 0) throw new IllegalArgumentException("k must not be negative");
+            this.k = k;
+            this.tags = new String[Math.min(k, 16)];
+            this.counts = new long[tags.length];
+        }
+
+        @Override
+        public void accept(String tag, long count) {
+            if (size < k) {
+                // Not full yet: grow the arrays if needed and add the row.
+                if (size == tags.length) {
+                    int capacity = (int) Math.min(k, 2L * tags.length);
+                    tags = Arrays.copyOf(tags, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+                }
+                tags[size] = tag;
+                counts[size] = count;
+                siftUp(size++);
+            } else if (k > 0 && worse(tags[0], counts[0], tag, count)) {
+                // Better than the worst kept row: replace it.
+                tags[0] = tag;
+                counts[0] = count;
+                siftDown(0);
+            }
+        }
+
+        // Combine two partial selections into this one.
+        TopK merge(TopK other) {
+            for (int i = 0; i < other.size; i++) accept(other.tags[i], other.counts[i]);
+            return this;
+        }
+
+        // The kept rows, best first.
+        List<Map.Entry<String, Long>> toList() {
+            List<Map.Entry<String, Long>> rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) rows.add(Map.entry(tags[i], counts[i]));
+            rows.sort(TrendingHashtags::compareRows);
+            return rows;
+        }
+
+        // True if row a ranks below row b (lower count, or same count and later name).
+        private static boolean worse(String tagA, long countA, String tagB, long countB) {
+            if (countA != countB) return countA < countB;
+            return tagA.compareTo(tagB) > 0;
+        }
+
+        private void siftUp(int pos) {
+            while (pos > 0) {
+                int parent = (pos - 1) >> 1;
+                if (!worse(tags[pos], counts[pos], tags[parent], counts[parent])) break;
+                swap(pos, parent);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int pos) {
+            while (true) {
+                int worst = pos;
+                int left = 2 * pos + 1;
+                int right = left + 1;
+                if (left < size && worse(tags[left], counts[left], tags[worst], counts[worst])) worst = left;
+                if (right < size && worse(tags[right], counts[right], tags[worst], counts[worst])) worst = right;
+                if (worst == pos) return;
+                swap(pos, worst);
+                pos = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            String tag = tags[a];
+            long count = counts[a];
+            tags[a] = tags[b];
+            counts[a] = counts[b];
+            tags[b] = tag;
+            counts[b] = count;
+        }
+    }
+
+    // Hashtag -> count table split into independently locked stripes.
+    static final class HashtagCounter {
+        private final Stripe[] stripes;
+
+        HashtagCounter(int stripeCount) {
+            int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1; // Next power of two
+            stripes = new Stripe[size];
+            for (int i = 0; i < size; i++) stripes[i] = new Stripe();
+        }
+
+        // Add 'delta' to the hashtag text[from, to) whose String.hashCode is 'hash'.
+        void add(CharSequence text, int from, int to, int hash, long delta) {
+            int spread = spread(hash);
+            Stripe stripe = stripes[spread & (stripes.length - 1)]; // Low bits pick the stripe
+            synchronized (stripe) {
+                stripe.add(text, from, to, spread, delta);
+            }
+        }
+
+        // Visit every hashtag and its count.
+        void forEach(ObjLongConsumer<String> action) {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.forEach(action);
+                }
+            }
+        }
+
+        // Top k hashtags. For large k each stripe selects its own top k in parallel,
+        // then the per-stripe results are merged.
+        TopK top(int k) {
+            if (k < PARALLEL_TOP_K || stripes.length == 1) {
+                TopK top = new TopK(k);
+                forEach(top);
+                return top;
+            }
+            return Arrays.stream(stripes).parallel().map(stripe -> {
+                TopK top = new TopK(k);
+                synchronized (stripe) {
+                    stripe.forEach(top);
+                }
+                return top;
+            }).reduce(TopK::merge).orElseGet(() -> new TopK(k));
+        }
+
+        // Count of one hashtag, or 0 if it was never seen.
+        long get(String tag) {
+            int spread = spread(tag.hashCode());
+            Stripe stripe = stripes[spread & (stripes.length - 1)];
+            synchronized (stripe) {
+                int slot = stripe.find(tag, 0, tag.length(), spread);
+                return slot < 0 ? 0 : stripe.values[slot];
+            }
+        }
+
+        int size() {
+            int total = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    total += stripe.size;
+                }
+            }
+            return total;
+        }
+    }
+
+    // Mix the high hash bits into the low ones before picking a stripe.
+    static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // One stripe: open-addressing table with linear probing and primitive long counts.
+    static final class Stripe {
+        String[] keys = new String[16];
+        long[] values = new long[16];
+        int shift = 32 - 4; // 32 - log2(table length)
+        int size;
+
+        // Add 'delta' to the hashtag text[from, to) and return its new count.
+        // A hashtag whose count drops to 0 is removed, so the table only holds live hashtags.
+        long add(CharSequence text, int from, int to, int spread, long delta) {
+            int mask = keys.length - 1;
+            int slot = home(spread);
+            while (true) {
+                String key = keys[slot];
+                if (key == null) {
+                    if (delta == 0) return 0;
+                    // First time we see this hashtag: this is the only place a String is created.
+                    keys[slot] = text.subSequence(from, to).toString();
+                    values[slot] = delta;
+                    if (++size * 4 >= keys.length * 3) resize(); // Keep the load factor below 0.75
+                    return delta;
+                }
+                if (regionEquals(key, text, from, to)) {
+                    long value = values[slot] += delta;
+                    if (value == 0) removeAt(slot);
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        // Slot of the hashtag text[from, to), or -1 if it is not in the table.
+        int find(CharSequence text, int from, int to, int spread) {
+            int mask = keys.length - 1;
+            for (int slot = home(spread); keys[slot] != null; slot = (slot + 1) & mask) {
+                if (regionEquals(keys[slot], text, from, to)) return slot;
+            }
+            return -1;
+        }
+
+        // Home slot of a hashtag: high bits of the mixed hash, since low bits picked the stripe.
+        private int home(int spread) {
+            return (spread * 0x9E3779B9) >>> shift;
+        }
+
+        // Delete a slot and shift later entries of the same probe run back into the gap.
+        private void removeAt(int slot) {
+            int mask = keys.length - 1;
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            while (keys[next] != null) {
+                int home = home(spread(keys[next].hashCode()));
+                // Move the entry if its home slot is not between the gap and its position.
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[gap] = null;
+            values[gap] = 0;
+            size--;
+        }
+
+        // Visit every hashtag and its count.
+        void forEach(ObjLongConsumer<String> action) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) action.accept(keys[i], values[i]);
+            }
+        }
+
+        // Forget every hashtag but keep the table capacity for reuse.
+        void clear() {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, 0);
+            size = 0;
+        }
+
+        // Double the table and re-insert every hashtag.
+        private void resize() {
+            String[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new String[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            shift--;
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = home(spread(oldKeys[i].hashCode()));
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static boolean regionEquals(String key, CharSequence text, int from, int to) {
+            if (key.length() != to - from) return false;
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != text.charAt(from + i)) return false;
+            }
+            return true;
+        }
     }
 }
 
@@ -113,4 +1093,23 @@ public class TrendingHashtags {
 // | #HappyDay   | 3       |
 // | #TechLife   | 2       |
 // | #FeelGood   | 1       |
-// +-------------+---------+
\ No newline at end of file
+// +-------------+---------+
+//
+// Approximate top 3:
+// +-------------+---------+
+// |   HASHTAG   |  COUNT  |
+// +-------------+---------+
+// | #HappyDay   | 3       |
+// | #TechLife   | 2       |
+// | #FeelGood   | 1       |
+// +-------------+---------+
+// Approximate top 3 matches exact: 3/3 (max overestimate 0, bound 0.14)
+//
+// Trending over the last 5 days:
+// +-------------+---------+
+// |   HASHTAG   |  COUNT  |
+// +-------------+---------+
+// | #FutureTech | 1       |
+// | #HappyDay   | 1       |
+// | #Nature     | 1       |
+// +-------------+---------+
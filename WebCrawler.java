@@ -10,17 +10,214 @@ Algorithm:
    - If it matches the hostname and hasn't been visited, add it to the result list.
    - Fetch new URLs using the HtmlParser and add them to the queue.
 6. Wait for all tasks to complete and return the list of crawled URLs.
+
+Parallel mode (crawlParallel):
+1. Workers are fork-join tasks, one per page. A worker fetches its page and claims each new
+   link itself by adding it to a concurrent visited set (ConcurrentHashMap.newKeySet).
+2. Every claimed link becomes a new task pushed onto the worker's own deque; idle workers
+   steal from the others, so no single coordinator thread decides what runs next.
+3. Each task counts its unfinished children (CountedCompleter pending count). The crawl is
+   done when the first task completes, which happens only after all of its descendants.
+
+Virtual-thread mode (crawlVirtualThreads):
+1. Every fetch runs as its own task on a virtual-thread-per-task executor, so thousands of
+   I/O-bound getUrls calls can wait at the same time without tying up platform threads.
+2. A semaphore caps how many getUrls calls are in flight at once.
+3. A pending counter tracks submitted-but-unfinished fetches; the crawl ends when it reaches 0.
+4. On a JVM without virtual threads (before Java 21), a fixed pool of 'maxConcurrency'
+   platform threads is used instead.
+
+Polite multi-host mode (crawlPolitely):
+1. Start from several seed URLs; every host of a seed is in scope.
+2. Each host has its own FIFO queue, a count of requests in flight and the earliest time its
+   next request may start (last start + minimum delay).
+3. Hosts that have work and are below their in-flight cap wait in a delay queue ordered by that
+   time. A free worker takes the host at the head as soon as its time has come, so while one
+   host is cooling down or slow, the workers keep serving the other hosts.
+4. No worker ever sleeps while holding a URL; a worker only waits when no host is ready.
+
+URL handling:
+- Hosts are found with one index scan over the URL (no split or regex) and compared in place.
+- Every mode dedups on a canonical key (lower-case scheme and host, no default port, no trailing
+  slash, no fragment), so equivalent spellings of a URL are crawled only once.
+
+Visited sets:
+- ExactVisitedSet keeps every canonical URL string (exact, but ~100+ bytes per URL).
+- FingerprintVisitedSet keeps a 64-bit fingerprint per URL in open-addressing long[] tables
+  (about 11-21 bytes per URL; a false match needs a 64-bit collision).
+- BloomVisitedSet keeps only a bit array sized for a target false-positive rate (about 10 bits
+  per URL at 1%), for crawls where skipping a few pages is acceptable.
+
+Resumable mode (crawlResumable):
+1. Every claimed URL ("Q url"), every finished page ("D url") and every failed fetch ("F url")
+   is appended to a journal file. Writes are buffered and forced to disk once per batch of events.
+2. On restart the journal is replayed: claimed URLs are visited again, pages with a D record
+   are not fetched again, and the rest (failed fetches included) form the frontier.
+3. The frontier keeps at most a given number of URLs in memory; the rest wait in a spill file
+   on disk in FIFO order, so the queue can be larger than the heap.
+4. The visited set can be passed in like in the other modes. By default it is a fingerprint set
+   sized from the journal, as is the set of finished pages built during the replay.
+
+Caching (CachingHtmlParser): wraps any HtmlParser with a size-bounded LRU cache with a TTL and
+merges concurrent calls for the same page into one fetch, counting hits, misses and merges.
+
+Prioritized mode (crawlPrioritized):
+1. Each frontier entry carries its depth and a score from a PageScorer; workers always fetch
+   the highest-scored entry, so the pages that matter most are fetched first.
+2. Links deeper than maxDepth are not queued and the crawl stops after maxPages fetches.
+3. The frontier is bounded: when it is full, its lowest-scored entry is dropped (and counted in
+   the metrics as dropped).
+
+Metrics (metrics()): every crawl mode times its getUrls calls and counts pages, errors, the
+frontier depth and the calls in flight. Latencies of getUrls, queue waits and coordinator
+stalls go into lock-free log-linear histograms; snapshot() copies everything for a reporter
+(startReporter prints one line per period), and failed fetches are counted, not printed.
+
+Run "java WebCrawler bench" to crawl synthetic slow sites and compare the modes.
 */
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 interface HtmlParser {
     List<String> getUrls(String url);
 }
 
+// HtmlParser decorator that caches getUrls results and merges concurrent calls for the same page.
+// - Cache: at most 'maxEntries' pages, least recently used evicted first, each valid for 'ttlMillis'.
+// - Single flight: while one thread fetches a page, other callers for it wait for that fetch
+//   instead of starting their own.
+// Keys are canonical URLs, so equivalent spellings share an entry.
+class CachingHtmlParser implements HtmlParser {
+    private final HtmlParser delegate;
+    private final long ttlNanos;
+    private final Map<String, CachedUrls> cache;  // Access-ordered LRU, guarded by itself
+    private final ConcurrentHashMap<String, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CachingHtmlParser(HtmlParser delegate, int maxEntries, long ttlMillis) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.cache = new LinkedHashMap<String, CachedUrls>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUrls> eldest) {
+                if (size() <= maxEntries) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public List<String> getUrls(String url) {
+        String key = WebCrawler.canonicalKey(url);
+        List<String> cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        // Become the one fetch for this page, or wait for the fetch already running.
+        CompletableFuture<List<String>> mine = new CompletableFuture<>();
+        CompletableFuture<List<String>> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw e;
+            }
+        }
+
+        try {
+            // A fetch may have finished between the lookup and putIfAbsent.
+            cached = lookup(key);
+            if (cached != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                cached = Collections.unmodifiableList(new ArrayList<>(delegate.getUrls(url)));
+                synchronized (cache) {
+                    cache.put(key, new CachedUrls(cached, System.nanoTime() + ttlNanos));
+                }
+            }
+            mine.complete(cached);
+            return cached;
+        } catch (Throwable e) {
+            mine.completeExceptionally(e); // Errors too, or the callers waiting on this fetch never wake up
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    // Cached links of a page, or null if absent or expired.
+    private List<String> lookup(String key) {
+        synchronized (cache) {
+            CachedUrls entry = cache.get(key);
+            if (entry == null) return null;
+            if (System.nanoTime() - entry.expiresAtNanos >= 0) {
+                cache.remove(key); // Expired
+                return null;
+            }
+            return entry.urls;
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits() + ", misses=" + misses() + ", coalesced=" + coalesced() + ", evictions=" + evictions();
+    }
+
+    private static final class CachedUrls {
+        final List<String> urls;
+        final long expiresAtNanos;
+
+        CachedUrls(List<String> urls, long expiresAtNanos) {
+            this.urls = urls;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
+
 public class WebCrawler {
-    public static void main(String[] args) {
+    private final CrawlMetrics metrics = new CrawlMetrics(); // Shared by every crawl of this instance
+
+    public static void main(String[] args) throws IOException {
         HtmlParser parser = new HtmlParser() {
             private Map<String, List<String>> urlMap = new HashMap<>();
             {
@@ -54,13 +251,257 @@ public class WebCrawler {
         System.out.println("\nTest Case 2 - Start with google.com:");
         List<String> result2 = crawler.crawl("http://news.google.com", parser);
         System.out.println("Crawled URLs: " + result2);
+
+        // Parallel mode finds the same pages; the order depends on thread timing, so sort it.
+        System.out.println("\nTest Case 3 - Parallel crawl of yahoo.com:");
+        List<String> result3 = crawler.crawlParallel("http://news.yahoo.com", parser, 4);
+        Collections.sort(result3);
+        System.out.println("Crawled URLs (sorted): " + result3);
+
+        System.out.println("\nTest Case 4 - Virtual-thread crawl of yahoo.com:");
+        List<String> result4 = crawler.crawlVirtualThreads("http://news.yahoo.com", parser, 100);
+        Collections.sort(result4);
+        System.out.println("Crawled URLs (sorted): " + result4);
+
+        System.out.println("\nTest Case 5 - Polite crawl of yahoo.com and google.com:");
+        List<String> result5 = crawler.crawlPolitely(Arrays.asList("http://news.yahoo.com", "http://news.google.com"),
+                parser, 4, 1, 10);
+        Collections.sort(result5);
+        System.out.println("Crawled URLs (sorted): " + result5);
+
+        // Equivalent spellings of the same page share one canonical key and are crawled once.
+        System.out.println("\nTest Case 6 - Equivalent URLs are crawled once:");
+        HtmlParser aliases = url -> url.equals("http://news.yahoo.com")
+                ? Arrays.asList("http://news.yahoo.com/news/", "HTTP://News.Yahoo.com:80/news", "http://news.yahoo.com/news#top")
+                : Collections.emptyList();
+        System.out.println("Crawled URLs: " + crawler.crawl("http://news.yahoo.com", aliases));
+        System.out.println("Canonical key: " + canonicalKey("HTTP://News.Yahoo.com:80/news/#top"));
+
+        // Links without "scheme://" have no host, so they are dropped like off-host links.
+        System.out.println("\nTest Case 6b - Links without a host are skipped:");
+        HtmlParser hostless = url -> url.equals("http://news.yahoo.com")
+                ? Arrays.asList("mailto:someone@yahoo.com", "news/topics", "tel:+15550100", "http://news.yahoo.com/us")
+                : Collections.emptyList();
+        System.out.println("Crawled URLs: " + crawler.crawl("http://news.yahoo.com", hostless));
+        List<String> hostlessParallel = crawler.crawlParallel("http://news.yahoo.com", hostless, 4);
+        Collections.sort(hostlessParallel);
+        System.out.println("Crawled URLs (parallel, sorted): " + hostlessParallel);
+
+        // Visited pages kept as 64-bit fingerprints instead of full strings.
+        System.out.println("\nTest Case 7 - Crawl with a compact visited set:");
+        List<String> result7 = crawler.crawlParallel("http://news.yahoo.com", parser, 4, new FingerprintVisitedSet(1000));
+        Collections.sort(result7);
+        System.out.println("Crawled URLs (sorted): " + result7);
+
+        // Resume from a journal left by a crawl that died after fetching the first page.
+        System.out.println("\nTest Case 8 - Resume a crawl from its journal:");
+        Path journalDir = Files.createTempDirectory("crawl");
+        Files.write(journalDir.resolve(JOURNAL_FILE), Arrays.asList(
+                "Q http://news.yahoo.com", "Q http://news.yahoo.com/news", "Q http://news.yahoo.com/us",
+                "D http://news.yahoo.com"), StandardCharsets.UTF_8);
+        AtomicInteger fetches = new AtomicInteger();
+        HtmlParser countingParser = url -> {
+            fetches.incrementAndGet();
+            return parser.getUrls(url);
+        };
+        System.out.println("Crawled URLs: " + crawler.crawlResumable("http://news.yahoo.com", countingParser,
+                journalDir, 2, 1));
+        System.out.println("Pages fetched after restart: " + fetches.get());
+        Files.delete(journalDir.resolve(JOURNAL_FILE));
+
+        // The crash came in the middle of a record: the unterminated last line is cut off, not fetched.
+        Files.write(journalDir.resolve(JOURNAL_FILE), ("Q http://news.yahoo.com\nQ http://news.yahoo.com/news\n"
+                + "Q http://news.yahoo.com/us\nD http://news.yahoo.com\nQ http://news.yahoo.com/news/to")
+                .getBytes(StandardCharsets.UTF_8));
+        fetches.set(0);
+        System.out.println("Torn journal, crawled URLs: " + crawler.crawlResumable("http://news.yahoo.com",
+                countingParser, journalDir, 2, 1));
+        System.out.println("Pages fetched after restart: " + fetches.get());
+        Files.delete(journalDir.resolve(JOURNAL_FILE));
+
+        // A failed fetch is not marked done, so the next run fetches the page (and finds its links) again.
+        new WebCrawler().crawlResumable("http://news.yahoo.com", url -> {
+            if (url.endsWith("/news")) throw new IllegalStateException("fetch failed: " + url);
+            return parser.getUrls(url);
+        }, journalDir, 2, 1);
+        fetches.set(0);
+        System.out.println("After a failed fetch, crawled URLs: " + crawler.crawlResumable("http://news.yahoo.com",
+                countingParser, journalDir, 2, 1, new FingerprintVisitedSet(1000)));
+        System.out.println("Pages fetched after restart: " + fetches.get());
+        Files.delete(journalDir.resolve(JOURNAL_FILE));
+        Files.delete(journalDir);
+
+        // A second crawl through the cache fetches nothing; concurrent calls for one page share a fetch.
+        System.out.println("\nTest Case 9 - Caching and coalescing parser:");
+        CachingHtmlParser caching = new CachingHtmlParser(parser, 1000, 60_000);
+        crawler.crawl("http://news.yahoo.com", caching);
+        crawler.crawl("http://news.yahoo.com", caching);
+        System.out.println("After two crawls: " + caching);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CachingHtmlParser slowCache = new CachingHtmlParser(url -> {
+            try {
+                release.await(); // Hold the first fetch until the second caller is waiting on it
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return parser.getUrls(url);
+        }, 1000, 60_000);
+        Thread first = new Thread(() -> slowCache.getUrls("http://news.yahoo.com"));
+        Thread second = new Thread(() -> slowCache.getUrls("http://news.yahoo.com/"));
+        first.start();
+        while (slowCache.misses() == 0) Thread.onSpinWait();
+        second.start();
+        while (slowCache.coalesced() == 0) Thread.onSpinWait();
+        release.countDown();
+        try {
+            first.join();
+            second.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Two concurrent calls: " + slowCache);
+
+        // Metrics of a fresh crawler; one page fails and is counted instead of printed.
+        System.out.println("\nTest Case 10 - Crawl metrics:");
+        WebCrawler measured = new WebCrawler();
+        measured.crawlParallel("http://news.yahoo.com", url -> {
+            if (url.endsWith("/us")) throw new IllegalStateException("fetch failed: " + url);
+            return parser.getUrls(url);
+        }, 4);
+        Snapshot snapshot = measured.metrics().snapshot();
+        System.out.println("pages=" + snapshot.pages + ", errors=" + snapshot.errors + ", frontier="
+                + snapshot.frontierDepth + ", inFlight=" + snapshot.inFlight + ", getUrls timed="
+                + snapshot.fetchLatency.count + ", last error: " + snapshot.lastError.getMessage());
+
+        // Depth-limited, priority-ordered crawl: pages under /us matter most.
+        System.out.println("\nTest Case 11 - Prioritized crawl of yahoo.com:");
+        PageScorer usFirst = (url, depth) -> (url.contains("/us") ? 10 : 0) - depth;
+        System.out.println("Max depth 1: " + crawler.crawlPrioritized("http://news.yahoo.com", parser, 1, 1,
+                100, 1000, usFirst));
+        System.out.println("Max 2 pages: " + crawler.crawlPrioritized("http://news.yahoo.com", parser, 1, 10,
+                2, 1000, usFirst));
+        WebCrawler bounded = new WebCrawler();
+        System.out.println("Frontier of 1: " + bounded.crawlPrioritized("http://news.yahoo.com", parser, 1, 10,
+                100, 1, usFirst) + ", dropped=" + bounded.metrics().snapshot().dropped);
+        System.out.println("Bloom visited set: " + crawler.crawlPrioritized("http://news.yahoo.com", parser, 1, 10,
+                100, 1000, usFirst, new BloomVisitedSet(1000, 0.01)));
+
+        if (args.length > 0 && args[0].equals("bench")) {
+            benchmark();
+        }
+    }
+
+    // Crawl synthetic sites whose getUrls sleeps, comparing the crawl modes.
+    static void benchmark() {
+        int pages = 400;
+        long latencyMillis = 10;
+        HtmlParser slowSite = syntheticSite("bench.example.com", pages, 4, latencyMillis);
+        WebCrawler crawler = new WebCrawler();
+
+        System.out.println("\nBenchmark - " + pages + " pages, " + latencyMillis + " ms per getUrls call:");
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            long start = System.nanoTime();
+            int crawled = crawler.crawlParallel("http://bench.example.com", slowSite, threads).size();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("crawlParallel, %2d threads: %d pages in %.2f s (%.0f pages/s)%n",
+                    threads, crawled, seconds, crawled / seconds);
+        }
+
+        // I/O-bound parser: the fixed pool of 4 threads against many in-flight virtual threads.
+        int ioPages = 1000;
+        long ioLatencyMillis = 20;
+        HtmlParser ioSite = syntheticSite("io.example.com", ioPages, 4, ioLatencyMillis);
+        System.out.println("\nBenchmark - " + ioPages + " pages, " + ioLatencyMillis + " ms per getUrls call ("
+                + (newVirtualThreadExecutor() != null ? "virtual threads" : "no virtual threads, platform pool") + "):");
+
+        long start = System.nanoTime();
+        int crawled = crawler.crawl("http://io.example.com", ioSite).size();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("crawl (fixed pool of 4):              %d pages in %.2f s (%.0f pages/s)%n",
+                crawled, seconds, crawled / seconds);
+
+        for (int limit : new int[]{64, 1024}) {
+            start = System.nanoTime();
+            WebCrawler reported = new WebCrawler();
+            Reporter reporter = reported.metrics().startReporter(100, System.out);
+            try (reporter) {
+                crawled = reported.crawlVirtualThreads("http://io.example.com", ioSite, limit).size();
+            }
+            seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("crawlVirtualThreads (limit %4d):     %d pages in %.2f s (%.0f pages/s)%n",
+                    limit, crawled, seconds, crawled / seconds);
+        }
+
+        // Three hosts, one of them slow: the fast hosts are limited only by their own delay.
+        Map<String, HtmlParser> sites = new HashMap<>();
+        sites.put("a.example.com", syntheticSite("a.example.com", 50, 2, 5));
+        sites.put("b.example.com", syntheticSite("b.example.com", 50, 2, 5));
+        sites.put("slow.example.com", syntheticSite("slow.example.com", 50, 2, 200));
+        Map<String, Long> hostDone = new ConcurrentHashMap<>(); // Host -> time its last fetch finished
+        long politeStart = System.nanoTime();
+        HtmlParser multiHost = url -> {
+            List<String> urls = sites.get(getHostName(url)).getUrls(url);
+            hostDone.merge(getHostName(url), System.nanoTime() - politeStart, Math::max);
+            return urls;
+        };
+        System.out.println("\nBenchmark - 3 hosts of 50 pages, 20 ms minimum delay per host, one host 200 ms slow:");
+        crawled = crawler.crawlPolitely(Arrays.asList("http://a.example.com", "http://b.example.com",
+                "http://slow.example.com"), multiHost, 8, 2, 20).size();
+        System.out.printf("crawlPolitely (8 threads, 2 per host): %d pages in %.2f s%n",
+                crawled, (System.nanoTime() - politeStart) / 1e9);
+        for (String host : new TreeSet<>(hostDone.keySet())) {
+            System.out.printf("  %-16s finished after %.2f s%n", host, hostDone.get(host) / 1e9);
+        }
+
+        // Visited-set modes: memory per URL, and how often an unseen URL is taken as visited.
+        int urls = 1_000_000;
+        System.out.println("\nBenchmark - visited sets with " + urls + " URLs, " + urls + " unseen probes:");
+        VisitedSet[] modes = {new ExactVisitedSet(), new FingerprintVisitedSet(urls), new BloomVisitedSet(urls, 0.01)};
+        for (VisitedSet visited : modes) {
+            // A distinct URL that add() refuses is a page the crawl would silently skip.
+            int rejected = 0;
+            for (int i = 0; i < urls; i++) {
+                if (!visited.add("http://bench.example.com/page/" + i)) rejected++;
+            }
+            int falsePositives = 0;
+            for (int i = urls; i < 2 * urls; i++) {
+                if (visited.contains("http://bench.example.com/page/" + i)) falsePositives++;
+            }
+            System.out.printf("%-22s %6.1f bytes/URL, rejected on add %.4f%%, false positives %.4f%%%n",
+                    visited.getClass().getSimpleName(), (double) visited.memoryBytes() / urls,
+                    100.0 * rejected / urls, 100.0 * falsePositives / urls);
+        }
+    }
+
+    // A site of 'pages' pages where page i links to the next 'links' pages (wrapping around)
+    // and every getUrls call waits 'latencyMillis' to imitate a network fetch.
+    static HtmlParser syntheticSite(String host, int pages, int links, long latencyMillis) {
+        return url -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String root = "http://" + host;
+            int page = url.equals(root) ? 0 : Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+            List<String> urls = new ArrayList<>(links);
+            for (int i = 1; i <= links; i++) {
+                urls.add(root + "/page/" + (page * links + i) % pages);
+            }
+            return urls;
+        };
     }
 
     public List<String> crawl(String startUrl, HtmlParser htmlParser) {
+        return crawl(startUrl, htmlParser, new ExactVisitedSet());
+    }
+
+    // Same crawl, remembering visited pages in the given set (exact or compact).
+    public List<String> crawl(String startUrl, HtmlParser htmlParser, VisitedSet visited) {
         String hostName = getHostName(startUrl);
 
         List<String> res = new ArrayList<>();
-        Set<String> visited = new HashSet<>();
         BlockingQueue<String> queue = new LinkedBlockingQueue<>();
         Deque<Future<?>> tasks = new ArrayDeque<>();
 
@@ -77,11 +518,13 @@ public class WebCrawler {
             String url = queue.poll();
             if (url != null) {
                 // Check if URL belongs to the same hostname and hasn't been visited
-                if (getHostName(url).equals(hostName) && visited.add(url)) {
+                if (isOnHost(url, hostName) && visited.add(canonicalKey(url))) {
                     res.add(url);
+                    metrics.claimed();
                     // Use a thread in the pool to fetch new URLs
+                    long queuedAt = System.nanoTime();
                     tasks.add(executor.submit(() -> {
-                        List<String> newUrls = htmlParser.getUrls(url);
+                        List<String> newUrls = metrics.fetch(htmlParser, url, queuedAt);
                         queue.addAll(newUrls);
                     }));
                 }
@@ -89,11 +532,19 @@ public class WebCrawler {
                 if (!tasks.isEmpty()) {
                     // Wait for the next task to complete
                     Future<?> nextTask = tasks.poll();
+                    long stallStart = System.nanoTime();
                     try {
                         nextTask.get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
+                    } catch (InterruptedException e) {
+                        // One interrupt is one failure: stop the other tasks instead of waiting on each.
+                        Thread.currentThread().interrupt();
+                        metrics.failed(e);
+                        for (Future<?> task : tasks) task.cancel(true);
+                        break;
+                    } catch (ExecutionException e) {
+                        metrics.failed(e.getCause());
                     }
+                    metrics.stalled(System.nanoTime() - stallStart);
                 } else {
                     // Exit when all tasks are completed
                     break;
@@ -105,11 +556,1359 @@ public class WebCrawler {
         return res;
     }
 
-    // Extract hostname from a given URL
-    private String getHostName(String url) {
-        url = url.substring(7); // Remove "http://"
-        String[] parts = url.split("/");
-        return parts[0]; // Extract domain name
+    // Crawl with 'threads' fork-join workers that claim and dispatch URLs themselves.
+    // Returns the same pages as crawl, in the order they were claimed.
+    public List<String> crawlParallel(String startUrl, HtmlParser htmlParser, int threads) {
+        return crawlParallel(startUrl, htmlParser, threads, new ExactVisitedSet());
+    }
+
+    // Parallel crawl; 'visited' holds the URLs already claimed by some worker.
+    public List<String> crawlParallel(String startUrl, HtmlParser htmlParser, int threads, VisitedSet visited) {
+        String hostName = getHostName(startUrl);
+
+        Queue<String> res = new ConcurrentLinkedQueue<>();   // Claimed URLs, in claim order
+
+        visited.add(canonicalKey(startUrl));
+        res.add(startUrl);
+        metrics.claimed();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // invoke returns once the root task and all of its descendants are complete.
+            pool.invoke(new CrawlTask(null, startUrl, hostName, htmlParser, visited, res, metrics));
+        } finally {
+            pool.shutdown();
+        }
+        return new ArrayList<>(res);
+    }
+
+    // Fetches one page and forks a child task for every link it is first to claim.
+    // The pending count is the number of children not yet complete.
+    private static final class CrawlTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final String url;
+        private final String hostName;
+        private final HtmlParser htmlParser;
+        private final VisitedSet visited;
+        private final Queue<String> res;
+        private final CrawlMetrics metrics;
+        private final long queuedAt = System.nanoTime(); // When the task was created and forked
+
+        CrawlTask(CrawlTask parent, String url, String hostName, HtmlParser htmlParser,
+                  VisitedSet visited, Queue<String> res, CrawlMetrics metrics) {
+            super(parent);
+            this.url = url;
+            this.hostName = hostName;
+            this.htmlParser = htmlParser;
+            this.visited = visited;
+            this.res = res;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void compute() {
+            List<String> newUrls = metrics.fetch(htmlParser, url, queuedAt);
+
+            for (String next : newUrls) {
+                // Claim the link; only the worker that adds it to 'visited' crawls it.
+                if (isOnHost(next, hostName) && visited.add(canonicalKey(next))) {
+                    res.add(next);
+                    metrics.claimed();
+                    addToPendingCount(1);
+                    new CrawlTask(this, next, hostName, htmlParser, visited, res, metrics).fork();
+                }
+            }
+            tryComplete(); // Completes now, or when the last child completes
+        }
+    }
+
+    // Crawl with one (virtual) thread per fetch and at most 'maxConcurrency' getUrls calls in flight.
+    public List<String> crawlVirtualThreads(String startUrl, HtmlParser htmlParser, int maxConcurrency) {
+        return crawlVirtualThreads(startUrl, htmlParser, maxConcurrency, new ExactVisitedSet());
+    }
+
+    // Virtual-thread crawl remembering visited pages in the given set.
+    public List<String> crawlVirtualThreads(String startUrl, HtmlParser htmlParser, int maxConcurrency,
+                                            VisitedSet visited) {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            // No virtual threads on this JVM: a fixed pool already limits the concurrency.
+            executor = Executors.newFixedThreadPool(maxConcurrency, daemonThreads());
+        }
+        try {
+            return new ExecutorCrawl(getHostName(startUrl), htmlParser, executor, maxConcurrency, visited, metrics)
+                    .run(startUrl);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on Java 21+, or null if this JVM has no virtual threads.
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // One crawl where every fetch is a separate task on an executor.
+    private static final class ExecutorCrawl {
+        private final String hostName;
+        private final HtmlParser htmlParser;
+        private final ExecutorService executor;
+        private final Semaphore inFlight;                  // Limits concurrent getUrls calls
+        private final VisitedSet visited;
+        private final CrawlMetrics metrics;
+        private final Queue<String> res = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger(); // Submitted fetches not yet finished
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        ExecutorCrawl(String hostName, HtmlParser htmlParser, ExecutorService executor, int maxConcurrency,
+                      VisitedSet visited, CrawlMetrics metrics) {
+            this.hostName = hostName;
+            this.visited = visited;
+            this.metrics = metrics;
+            this.htmlParser = htmlParser;
+            this.executor = executor;
+            this.inFlight = new Semaphore(maxConcurrency);
+        }
+
+        List<String> run(String startUrl) {
+            visited.add(canonicalKey(startUrl));
+            res.add(startUrl);
+            metrics.claimed();
+            submit(startUrl);
+            try {
+                done.await(); // Wait until the pending counter drops to 0
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ArrayList<>(res);
+        }
+
+        private void submit(String url) {
+            pending.incrementAndGet();
+            long queuedAt = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    fetch(url, queuedAt);
+                } finally {
+                    // Children were counted before this decrement, so 0 means the crawl is over.
+                    if (pending.decrementAndGet() == 0) done.countDown();
+                }
+            });
+        }
+
+        private void fetch(String url, long queuedAt) {
+            List<String> newUrls;
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                newUrls = metrics.fetch(htmlParser, url, queuedAt);
+            } finally {
+                inFlight.release();
+            }
+
+            for (String next : newUrls) {
+                if (isOnHost(next, hostName) && visited.add(canonicalKey(next))) {
+                    res.add(next);
+                    metrics.claimed();
+                    submit(next);
+                }
+            }
+        }
+    }
+
+    // Crawl every host of the seed URLs with 'threads' workers, at most 'maxPerHost' requests
+    // in flight per host and at least 'minDelayMillis' between request starts on the same host.
+    public List<String> crawlPolitely(List<String> seedUrls, HtmlParser htmlParser, int threads,
+                                      int maxPerHost, long minDelayMillis) {
+        return crawlPolitely(seedUrls, htmlParser, threads, maxPerHost, minDelayMillis, new ExactVisitedSet());
+    }
+
+    // Polite crawl; 'visited' holds the URLs already queued on some host.
+    public List<String> crawlPolitely(List<String> seedUrls, HtmlParser htmlParser, int threads,
+                                      int maxPerHost, long minDelayMillis, VisitedSet visited) {
+        PolitenessScheduler scheduler = new PolitenessScheduler(maxPerHost, TimeUnit.MILLISECONDS.toNanos(minDelayMillis),
+                visited, metrics);
+        for (String seed : seedUrls) scheduler.addHost(getHostName(seed));
+        for (String seed : seedUrls) scheduler.offer(seed);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreads());
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                String url;
+                // Take the next URL whose host is ready, fetch it, then report its links.
+                while ((url = scheduler.next()) != null) {
+                    List<String> newUrls = Collections.emptyList();
+                    try {
+                        // Queue wait is not recorded here: it includes the intended per-host delay.
+                        newUrls = metrics.fetch(htmlParser, url, -1);
+                    } finally {
+                        scheduler.complete(url, newUrls);
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                // One interrupt is one failure: stop the other workers instead of waiting on each.
+                Thread.currentThread().interrupt();
+                metrics.failed(e);
+                for (Future<?> other : workers) other.cancel(true);
+                break;
+            } catch (ExecutionException e) {
+                metrics.failed(e.getCause());
+            }
+        }
+        executor.shutdown();
+        return scheduler.crawled();
+    }
+
+    // Per-host frontier. Hosts that may send a request wait in 'ready', ordered by the time
+    // their minimum delay runs out; workers wait on 'changed' only while no host is ready.
+    private static final class PolitenessScheduler {
+        private final int maxPerHost;
+        private final long minDelayNanos;
+        private final Map<String, HostQueue> hosts = new HashMap<>();
+        private final PriorityQueue<HostQueue> ready =
+                new PriorityQueue<>(Comparator.comparingLong((HostQueue h) -> h.nextStartNanos));
+        private final VisitedSet visited;
+        private final List<String> res = new ArrayList<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final CrawlMetrics metrics;
+        private int pending; // URLs queued or in flight on any host
+
+        PolitenessScheduler(int maxPerHost, long minDelayNanos, VisitedSet visited, CrawlMetrics metrics) {
+            this.maxPerHost = maxPerHost;
+            this.minDelayNanos = minDelayNanos;
+            this.visited = visited;
+            this.metrics = metrics;
+        }
+
+        // Put a host in scope for the crawl.
+        void addHost(String hostName) {
+            lock.lock();
+            try {
+                hosts.computeIfAbsent(hostName, HostQueue::new);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Queue a URL on its host if the host is in scope and the URL is new.
+        void offer(String url) {
+            lock.lock();
+            try {
+                enqueue(url);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Next URL to fetch, waiting until some host is ready; null once the crawl is over.
+        String next() {
+            lock.lock();
+            try {
+                while (true) {
+                    if (pending == 0) return null;
+                    HostQueue host = ready.peek();
+                    if (host == null) {
+                        changed.await(); // Every host is busy or empty: wait for a completion
+                        continue;
+                    }
+                    long wait = host.nextStartNanos - System.nanoTime();
+                    if (wait > 0) {
+                        changed.awaitNanos(wait); // Wake when the earliest host may start
+                        continue;
+                    }
+
+                    // Start a request on this host and put it back if it can take another.
+                    ready.poll();
+                    host.inReady = false;
+                    host.inFlight++;
+                    host.nextStartNanos = System.nanoTime() + minDelayNanos;
+                    String url = host.urls.poll();
+                    makeReady(host);
+                    return url;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Record a finished fetch and queue the links it found.
+        void complete(String url, List<String> newUrls) {
+            lock.lock();
+            try {
+                HostQueue host = hosts.get(getHostName(url));
+                host.inFlight--;
+                for (String next : newUrls) enqueue(next);
+                makeReady(host);
+                pending--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<String> crawled() {
+            lock.lock();
+            try {
+                return new ArrayList<>(res);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void enqueue(String url) {
+            HostQueue host = hosts.get(getHostName(url));
+            if (host == null || !visited.add(canonicalKey(url))) return; // Out of scope or already seen
+            res.add(url);
+            metrics.claimed();
+            host.urls.add(url);
+            pending++;
+            makeReady(host);
+            changed.signal();
+        }
+
+        // Add the host to the delay queue if it has work and is under its in-flight cap.
+        private void makeReady(HostQueue host) {
+            if (!host.inReady && !host.urls.isEmpty() && host.inFlight < maxPerHost) {
+                host.inReady = true;
+                ready.add(host);
+            }
+        }
+    }
+
+    // Crawl state of one host.
+    private static final class HostQueue {
+        final String hostName;
+        final Deque<String> urls = new ArrayDeque<>(); // URLs waiting for this host
+        int inFlight;          // Requests to this host running now
+        long nextStartNanos;   // Earliest start of the next request (System.nanoTime)
+        boolean inReady;       // Whether the host is in the scheduler's delay queue
+
+        HostQueue(String hostName) {
+            this.hostName = hostName;
+        }
+    }
+
+    // Scores a frontier entry; higher scores are fetched first.
+    interface PageScorer {
+        double score(String url, int depth);
+    }
+
+    // Default scorer: shallower pages first, in discovery order within a depth.
+    static final PageScorer BREADTH_FIRST = (url, depth) -> -depth;
+
+    // Crawl the most important pages first. Every frontier entry carries its depth (links from
+    // the start page) and a score; workers always take the highest-scored entry. Links deeper
+    // than 'maxDepth' are not queued, at most 'maxPages' pages are fetched, and the frontier
+    // holds at most 'frontierCapacity' entries (the lowest-scored entry is dropped when full).
+    // Returns the pages in the order they were fetched.
+    public List<String> crawlPrioritized(String startUrl, HtmlParser htmlParser, int threads, int maxDepth,
+                                         int maxPages, int frontierCapacity, PageScorer scorer) {
+        return crawlPrioritized(startUrl, htmlParser, threads, maxDepth, maxPages, frontierCapacity, scorer,
+                new ExactVisitedSet());
+    }
+
+    // Prioritized crawl; 'visited' holds the URLs already queued or fetched.
+    public List<String> crawlPrioritized(String startUrl, HtmlParser htmlParser, int threads, int maxDepth,
+                                         int maxPages, int frontierCapacity, PageScorer scorer, VisitedSet visited) {
+        String hostName = getHostName(startUrl);
+        PriorityFrontier frontier = new PriorityFrontier(frontierCapacity, maxPages, metrics);
+
+        visited.add(canonicalKey(startUrl));
+        frontier.offer(startUrl, 0, scorer.score(startUrl, 0));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreads());
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                FrontierEntry entry;
+                // Take the best entry, fetch it, then queue its links one level deeper.
+                while ((entry = frontier.take()) != null) {
+                    List<String> newUrls = Collections.emptyList();
+                    try {
+                        newUrls = metrics.fetch(htmlParser, entry.url, entry.queuedAt);
+                        int depth = entry.depth + 1;
+                        if (depth > maxDepth) continue;
+                        for (String next : newUrls) {
+                            if (isOnHost(next, hostName) && visited.add(canonicalKey(next))) {
+                                frontier.offer(next, depth, scorer.score(next, depth));
+                            }
+                        }
+                    } finally {
+                        frontier.done();
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                // One interrupt is one failure: stop the other workers instead of waiting on each.
+                Thread.currentThread().interrupt();
+                metrics.failed(e);
+                for (Future<?> other : workers) other.cancel(true);
+                break;
+            } catch (ExecutionException e) {
+                metrics.failed(e.getCause());
+            }
+        }
+        executor.shutdown();
+        return frontier.fetched();
+    }
+
+    // One queued page of a prioritized crawl.
+    private static final class FrontierEntry {
+        final String url;
+        final int depth;
+        final double score;
+        final long sequence;  // Discovery order, breaks ties between equal scores
+        final long queuedAt = System.nanoTime();
+
+        FrontierEntry(String url, int depth, double score, long sequence) {
+            this.url = url;
+            this.depth = depth;
+            this.score = score;
+            this.sequence = sequence;
+        }
+    }
+
+    // Bounded priority frontier shared by the workers of crawlPrioritized. Entries are kept in a
+    // TreeSet (best first), so both the best entry (to dispatch) and the worst (to drop when
+    // full) are O(log n). Workers wait on 'changed' while the frontier is empty but pages are
+    // still being fetched, since those may add more links.
+    private static final class PriorityFrontier {
+        private final TreeSet<FrontierEntry> entries = new TreeSet<>(
+                Comparator.comparingDouble((FrontierEntry e) -> -e.score).thenComparingLong(e -> e.sequence));
+        private final int capacity;
+        private final int maxPages;
+        private final CrawlMetrics metrics;
+        private final List<String> fetched = new ArrayList<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private long nextSequence;
+        private int active;   // Pages being fetched now
+
+        PriorityFrontier(int capacity, int maxPages, CrawlMetrics metrics) {
+            this.capacity = Math.max(1, capacity);
+            this.maxPages = maxPages;
+            this.metrics = metrics;
+        }
+
+        void offer(String url, int depth, double score) {
+            lock.lock();
+            try {
+                entries.add(new FrontierEntry(url, depth, score, nextSequence++));
+                metrics.claimed();
+                if (entries.size() > capacity) {
+                    entries.pollLast(); // Full: drop the least important entry
+                    metrics.dropped();
+                }
+                changed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Best entry to fetch next; null when the crawl is over or 'maxPages' pages were taken.
+        FrontierEntry take() {
+            lock.lock();
+            try {
+                while (true) {
+                    if (fetched.size() >= maxPages) return null;
+                    FrontierEntry best = entries.pollFirst();
+                    if (best != null) {
+                        fetched.add(best.url);
+                        active++;
+                        return best;
+                    }
+                    if (active == 0) return null; // Nothing queued and nothing that could add more
+                    changed.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // A fetch taken with take() has finished and queued its links.
+        void done() {
+            lock.lock();
+            try {
+                active--;
+                if (active == 0 || fetched.size() >= maxPages) {
+                    if (fetched.size() >= maxPages) {
+                        metrics.claimed(-entries.size()); // Left unfetched at the page limit
+                        entries.clear();
+                    }
+                    changed.signalAll(); // Waiting workers may now be able to finish
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<String> fetched() {
+            lock.lock();
+            try {
+                return new ArrayList<>(fetched);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Live counters of this crawler's crawls.
+    public CrawlMetrics metrics() {
+        return metrics;
+    }
+
+    // Crawl instrumentation. Updates are lock-free counters, so workers pay a few atomic adds per page;
+    // snapshot() copies them for a reporter without stopping the crawl.
+    public static final class CrawlMetrics {
+        private final LongAdder pages = new LongAdder();    // Finished getUrls calls
+        private final LongAdder errors = new LongAdder();   // getUrls calls that threw
+        private final LongAdder dropped = new LongAdder();  // Claimed URLs dropped by a full bounded frontier
+        private final AtomicLong frontier = new AtomicLong(); // Claimed URLs not yet being fetched
+        private final AtomicLong inFlight = new AtomicLong(); // getUrls calls running now
+        private final LatencyHistogram fetchLatency = new LatencyHistogram(); // getUrls time
+        private final LatencyHistogram queueWait = new LatencyHistogram();    // Claim/dispatch to fetch start
+        private final LatencyHistogram stalls = new LatencyHistogram();       // Coordinator blocked on results
+        private final long startNanos = System.nanoTime();
+        private volatile Throwable lastError;
+
+        void claimed() {
+            frontier.incrementAndGet();
+        }
+
+        void claimed(long count) {
+            frontier.addAndGet(count);
+        }
+
+        void stalled(long nanos) {
+            stalls.record(nanos);
+        }
+
+        // A claimed URL was dropped from a full frontier and will not be fetched.
+        void dropped() {
+            frontier.decrementAndGet();
+            dropped.increment();
+        }
+
+        // Count a failure and remember it as the last error.
+        void failed(Throwable e) {
+            errors.increment();
+            lastError = e;
+        }
+
+        // Call getUrls with timing. A failure is counted and remembered, and the page gets no links.
+        // 'queuedAt' is the System.nanoTime when the URL was handed to a worker, or -1 if unknown.
+        List<String> fetch(HtmlParser htmlParser, String url, long queuedAt) {
+            List<String> urls = tryFetch(htmlParser, url, queuedAt);
+            return urls != null ? urls : Collections.emptyList();
+        }
+
+        // Same as fetch, but returns null instead of an empty list when getUrls threw.
+        List<String> tryFetch(HtmlParser htmlParser, String url, long queuedAt) {
+            long start = System.nanoTime();
+            frontier.decrementAndGet();
+            if (queuedAt >= 0) queueWait.record(start - queuedAt);
+            inFlight.incrementAndGet();
+            try {
+                return htmlParser.getUrls(url);
+            } catch (RuntimeException e) {
+                failed(e);
+                return null;
+            } finally {
+                inFlight.decrementAndGet();
+                fetchLatency.record(System.nanoTime() - start);
+                pages.increment();
+            }
+        }
+
+        public Snapshot snapshot() {
+            return new Snapshot(System.nanoTime() - startNanos, pages.sum(), errors.sum(), dropped.sum(), frontier.get(),
+                    inFlight.get(), fetchLatency.snapshot(), queueWait.snapshot(), stalls.snapshot(), lastError);
+        }
+
+        // Print a snapshot every 'periodMillis' until the returned handle is closed.
+        public Reporter startReporter(long periodMillis, PrintStream out) {
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("crawl-metrics"));
+            timer.scheduleAtFixedRate(() -> out.println(snapshot()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+            return timer::shutdownNow;
+        }
+    }
+
+    // Handle of a running metrics reporter; closing it stops the reporter.
+    public interface Reporter extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Point-in-time copy of CrawlMetrics.
+    public static final class Snapshot {
+        public final long elapsedNanos;
+        public final long pages;
+        public final long errors;
+        public final long dropped;
+        public final long frontierDepth;
+        public final long inFlight;
+        public final HistogramSnapshot fetchLatency;
+        public final HistogramSnapshot queueWait;
+        public final HistogramSnapshot stalls;
+        public final Throwable lastError;
+
+        Snapshot(long elapsedNanos, long pages, long errors, long dropped, long frontierDepth, long inFlight,
+                 HistogramSnapshot fetchLatency, HistogramSnapshot queueWait, HistogramSnapshot stalls,
+                 Throwable lastError) {
+            this.elapsedNanos = elapsedNanos;
+            this.pages = pages;
+            this.errors = errors;
+            this.dropped = dropped;
+            this.frontierDepth = frontierDepth;
+            this.inFlight = inFlight;
+            this.fetchLatency = fetchLatency;
+            this.queueWait = queueWait;
+            this.stalls = stalls;
+            this.lastError = lastError;
+        }
+
+        public double pagesPerSecond() {
+            return pages / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pages=%d (%.0f/s) frontier=%d inFlight=%d errors=%d dropped=%d | getUrls %s | queue wait %s | stalls %s",
+                    pages, pagesPerSecond(), frontierDepth, inFlight, errors, dropped, fetchLatency, queueWait, stalls);
+        }
+    }
+
+    // Lock-free latency histogram in the HdrHistogram style: each power of two is split into
+    // 8 linear sub-buckets, so any recorded value is known to within 12.5% using 512 counters.
+    static final class LatencyHistogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_COUNT);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts.incrementAndGet(bucket(value));
+            sum.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        // Values below 8 get their own bucket; above that, (power of two, top 3 bits below it).
+        static int bucket(long value) {
+            if (value < SUB_COUNT) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        // Largest value that falls into a bucket.
+        static long bucketUpperBound(int bucket) {
+            if (bucket < SUB_COUNT) return bucket;
+            int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+            long lower = (long) (SUB_COUNT + bucket % SUB_COUNT) << (exponent - SUB_BITS);
+            return lower + (1L << (exponent - SUB_BITS)) - 1;
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] copy = new long[counts.length()];
+            long total = 0;
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = counts.get(i);
+                total += copy[i];
+            }
+            return new HistogramSnapshot(copy, total, sum.sum(), max.get());
+        }
+    }
+
+    // Copy of a LatencyHistogram with percentile queries (values in nanoseconds).
+    public static final class HistogramSnapshot {
+        private final long[] counts;
+        public final long count;
+        public final long sumNanos;
+        public final long maxNanos;
+
+        HistogramSnapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        // Smallest bucket bound that at least 'percentile' percent of the values are under.
+        public long percentileNanos(double percentile) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) return Math.min(LatencyHistogram.bucketUpperBound(i), maxNanos);
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%.2fms p99=%.2fms max=%.2fms", count, percentileNanos(50) / 1e6,
+                    percentileNanos(99) / 1e6, maxNanos / 1e6);
+        }
+    }
+
+    static final String JOURNAL_FILE = "crawl.journal";
+    static final String SPILL_FILE = "frontier.spill";
+    static final int JOURNAL_BYTES_PER_URL = 64; // A Q and a D record of a typical URL, rounded down
+
+    // Crawl that survives a restart. State is journaled in 'journalDir'; if a journal is already
+    // there, the crawl continues where it stopped. At most 'frontierBudget' queued URLs are kept
+    // in memory. One coordinator thread owns the journal and frontier; 'threads' workers fetch.
+    public List<String> crawlResumable(String startUrl, HtmlParser htmlParser, Path journalDir,
+                                       int threads, int frontierBudget) throws IOException {
+        return crawlResumable(startUrl, htmlParser, journalDir, threads, frontierBudget,
+                new FingerprintVisitedSet(CrawlJournal.journalUrlEstimate(journalDir.resolve(JOURNAL_FILE))));
+    }
+
+    // Resumable crawl; 'visited' holds the claimed URLs, including those replayed from the journal.
+    // Size it for the whole crawl, which may be far larger than one run.
+    public List<String> crawlResumable(String startUrl, HtmlParser htmlParser, Path journalDir,
+                                       int threads, int frontierBudget, VisitedSet visited) throws IOException {
+        String hostName = getHostName(startUrl);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreads());
+        try (SpillingFrontier frontier = new SpillingFrontier(journalDir.resolve(SPILL_FILE), frontierBudget);
+             CrawlJournal journal = CrawlJournal.open(journalDir.resolve(JOURNAL_FILE), visited, frontier)) {
+            if (journal.isEmpty()) {
+                visited.add(canonicalKey(startUrl));
+                journal.claimed(startUrl);
+                frontier.add(startUrl);
+            }
+            metrics.claimed(frontier.size());
+
+            // Fetches finish in any order; handle each one as soon as it is done.
+            CompletionService<Map.Entry<String, List<String>>> completion = new ExecutorCompletionService<>(executor);
+            int inFlight = 0;
+            while (inFlight > 0 || !frontier.isEmpty()) {
+                while (inFlight < threads && !frontier.isEmpty()) {
+                    String url = frontier.poll();
+                    long queuedAt = System.nanoTime();
+                    completion.submit(() -> new AbstractMap.SimpleImmutableEntry<>(url, metrics.tryFetch(htmlParser, url, queuedAt)));
+                    inFlight++;
+                }
+
+                long stallStart = System.nanoTime();
+                Map.Entry<String, List<String>> fetched = completion.take().get();
+                metrics.stalled(System.nanoTime() - stallStart);
+                inFlight--;
+                if (fetched.getValue() == null) {
+                    // Not D: a later run fetches the page again. This run does not retry it.
+                    journal.failed(fetched.getKey());
+                    continue;
+                }
+                // Journal the new links before the page's D record, so a crash in between
+                // refetches the page instead of losing its links.
+                for (String next : fetched.getValue()) {
+                    if (isOnHost(next, hostName) && visited.add(canonicalKey(next))) {
+                        journal.claimed(next);
+                        frontier.add(next);
+                        metrics.claimed();
+                    }
+                }
+                journal.done(fetched.getKey());
+            }
+            journal.sync();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Crawl interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Fetch failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return CrawlJournal.claimedUrls(journalDir.resolve(JOURNAL_FILE));
+    }
+
+    // Append-only log of crawl events: "Q url" when a URL is claimed, "D url" when its page is done,
+    // "F url" when fetching it failed (replay treats it like a claimed page that is not done).
+    // Events are buffered and forced to disk every SYNC_EVERY events and on close.
+    private static final class CrawlJournal implements Closeable {
+        private static final int SYNC_EVERY = 256;
+        private final FileOutputStream file;
+        private final Writer out;
+        private final boolean empty;
+        private int unsynced;
+
+        private CrawlJournal(Path path, boolean empty) throws IOException {
+            this.file = new FileOutputStream(path.toFile(), true);
+            this.out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+            this.empty = empty;
+        }
+
+        // Open the journal, replaying any earlier events into 'visited' and 'frontier'.
+        static CrawlJournal open(Path path, VisitedSet visited, SpillingFrontier frontier) throws IOException {
+            if (!Files.exists(path)) return new CrawlJournal(path, true);
+            truncateTornTail(path);
+
+            // Pass 1: every claimed URL is visited; remember which pages were finished.
+            VisitedSet done = new FingerprintVisitedSet(journalUrlEstimate(path));
+            boolean any = false;
+            try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    if (line.length() < 3 || line.charAt(1) != ' ') continue; // Not a record
+                    String key = canonicalKey(line.substring(2));
+                    if (line.charAt(0) == 'Q') visited.add(key);
+                    else if (line.charAt(0) == 'D') done.add(key);
+                    any = true;
+                }
+            }
+            // Pass 2: claimed but unfinished pages form the frontier again, in claim order.
+            try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    if (line.startsWith("Q ") && !done.contains(canonicalKey(line.substring(2)))) {
+                        frontier.add(line.substring(2));
+                    }
+                }
+            }
+            return new CrawlJournal(path, !any);
+        }
+
+        // Rough number of URLs recorded in the journal at 'path', for sizing the sets it is
+        // replayed into. At least 1024, so a new crawl starts with a small table.
+        static long journalUrlEstimate(Path path) throws IOException {
+            long bytes = Files.exists(path) ? Files.size(path) : 0;
+            return Math.max(1024, bytes / JOURNAL_BYTES_PER_URL);
+        }
+
+        // Cut off an unterminated last line, left by a crash in the middle of a write. Otherwise it
+        // would be replayed as a (truncated) URL, and the next record appended would be glued to it.
+        private static void truncateTornTail(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(4096);
+                long end = channel.size();
+                while (end > 0) {
+                    long from = Math.max(0, end - buffer.capacity());
+                    buffer.clear().limit((int) (end - from));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, from + buffer.position()) < 0) throw new EOFException("Journal shrank: " + path);
+                    }
+                    for (int i = buffer.limit() - 1; i >= 0; i--) {
+                        if (buffer.get(i) == '\n') {
+                            channel.truncate(from + i + 1); // Keep everything up to the last complete record
+                            return;
+                        }
+                    }
+                    end = from;
+                }
+                channel.truncate(0); // Not one complete record
+            }
+        }
+
+        // URLs of all Q records, in claim order.
+        static List<String> claimedUrls(Path path) throws IOException {
+            List<String> urls = new ArrayList<>();
+            try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    if (line.startsWith("Q ")) urls.add(line.substring(2));
+                }
+            }
+            return urls;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        void claimed(String url) throws IOException {
+            append('Q', url);
+        }
+
+        void done(String url) throws IOException {
+            append('D', url);
+        }
+
+        void failed(String url) throws IOException {
+            append('F', url);
+        }
+
+        private void append(char type, String url) throws IOException {
+            out.write(type);
+            out.write(' ');
+            out.write(url);
+            out.write('\n');
+            if (++unsynced >= SYNC_EVERY) sync();
+        }
+
+        // Push buffered events to the file and force them to disk.
+        void sync() throws IOException {
+            out.flush();
+            file.getFD().sync();
+            unsynced = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                sync();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // FIFO queue of URLs holding at most 'budget' in memory. Once it is full, new URLs go to a
+    // spill file (and keep going there until the file is drained, so FIFO order is kept).
+    private static final class SpillingFrontier implements Closeable {
+        private final Path spillPath;
+        private final int budget;
+        private final Deque<String> memory = new ArrayDeque<>();
+        private BufferedWriter spillOut;
+        private BufferedReader spillIn;
+        private long spilled; // URLs written to the spill file and not yet read back
+
+        SpillingFrontier(Path spillPath, int budget) throws IOException {
+            this.spillPath = spillPath;
+            this.budget = Math.max(1, budget);
+            Files.deleteIfExists(spillPath); // Leftovers are rebuilt from the journal
+        }
+
+        void add(String url) throws IOException {
+            if (spilled == 0 && memory.size() < budget) {
+                memory.add(url);
+                return;
+            }
+            if (spillOut == null) {
+                spillOut = Files.newBufferedWriter(spillPath, StandardCharsets.UTF_8);
+            }
+            spillOut.write(url);
+            spillOut.write('\n');
+            spilled++;
+        }
+
+        String poll() throws IOException {
+            if (memory.isEmpty() && spilled > 0) refill();
+            return memory.poll();
+        }
+
+        boolean isEmpty() {
+            return memory.isEmpty() && spilled == 0;
+        }
+
+        long size() {
+            return memory.size() + spilled;
+        }
+
+        // Move up to 'budget' URLs from the spill file back into memory.
+        private void refill() throws IOException {
+            spillOut.flush();
+            if (spillIn == null) spillIn = Files.newBufferedReader(spillPath, StandardCharsets.UTF_8);
+            while (memory.size() < budget && spilled > 0) {
+                memory.add(spillIn.readLine());
+                spilled--;
+            }
+            if (spilled == 0) {
+                // Drained: start a fresh spill file next time.
+                close();
+                Files.deleteIfExists(spillPath);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spillIn != null) spillIn.close();
+            if (spillOut != null) spillOut.close();
+            spillIn = null;
+            spillOut = null;
+        }
+    }
+
+    // Set of canonical URL keys the crawl has already claimed. Implementations are thread-safe.
+    interface VisitedSet {
+        // Add a key; false if it was (or, for approximate sets, looks) already present.
+        boolean add(String key);
+
+        // Whether a key was (or, for approximate sets, looks) already added.
+        boolean contains(String key);
+
+        // Number of keys added.
+        long size();
+
+        // Approximate heap bytes used by the set.
+        long memoryBytes();
+    }
+
+    // Exact mode: every canonical URL string is kept on the heap.
+    static final class ExactVisitedSet implements VisitedSet {
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+        private final AtomicLong bytes = new AtomicLong();
+
+        @Override
+        public boolean add(String key) {
+            if (!keys.add(key)) return false;
+            // String (24) + byte[] (16 + chars, 8-aligned) + map node (32) + table slot (~8).
+            bytes.addAndGet(24 + ((16 + key.length() + 7) & ~7) + 32 + 8);
+            return true;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public long size() {
+            return keys.size();
+        }
+
+        @Override
+        public long memoryBytes() {
+            return bytes.get();
+        }
+    }
+
+    // Compact mode: only a 64-bit fingerprint of each URL, in open-addressing long[] tables
+    // (split into independently locked segments). Two URLs are confused only if their
+    // fingerprints collide, which for n URLs happens with probability about n^2 / 2^65.
+    static final class FingerprintVisitedSet implements VisitedSet {
+        private static final int SEGMENTS = 64;
+        private final Object[] locks = new Object[SEGMENTS];
+        private final long[][] tables = new long[SEGMENTS][]; // 0 marks an empty slot
+        private final int[] sizes = new int[SEGMENTS];
+
+        FingerprintVisitedSet(long expectedUrls) {
+            // Start each segment large enough for its share at a load factor below 0.75.
+            long perSegment = Math.min(1 << 29, Math.max(16, 2 * expectedUrls / SEGMENTS));
+            for (int i = 0; i < SEGMENTS; i++) {
+                locks[i] = new Object();
+                tables[i] = new long[Integer.highestOneBit((int) perSegment - 1) << 1];
+            }
+        }
+
+        @Override
+        public boolean add(String key) {
+            long fingerprint = fingerprint(key);
+            int segment = (int) (fingerprint >>> 58); // Top 6 bits pick the segment
+            synchronized (locks[segment]) {
+                long[] table = tables[segment];
+                int mask = table.length - 1;
+                for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+                    if (table[slot] == fingerprint) return false;
+                    if (table[slot] == 0) {
+                        table[slot] = fingerprint;
+                        if (++sizes[segment] * 4 >= table.length * 3) grow(segment); // Load factor 0.75
+                        return true;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean contains(String key) {
+            long fingerprint = fingerprint(key);
+            int segment = (int) (fingerprint >>> 58);
+            synchronized (locks[segment]) {
+                long[] table = tables[segment];
+                int mask = table.length - 1;
+                for (int slot = (int) fingerprint & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                    if (table[slot] == fingerprint) return true;
+                }
+                return false;
+            }
+        }
+
+        // Double a segment's table. Must hold the segment's lock.
+        private void grow(int segment) {
+            long[] old = tables[segment];
+            long[] table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long fingerprint : old) {
+                if (fingerprint == 0) continue;
+                int slot = (int) fingerprint & mask;
+                while (table[slot] != 0) slot = (slot + 1) & mask;
+                table[slot] = fingerprint;
+            }
+            tables[segment] = table;
+        }
+
+        @Override
+        public long size() {
+            long total = 0;
+            for (int i = 0; i < SEGMENTS; i++) {
+                synchronized (locks[i]) {
+                    total += sizes[i];
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public long memoryBytes() {
+            long total = 0;
+            for (int i = 0; i < SEGMENTS; i++) {
+                synchronized (locks[i]) {
+                    total += 16 + 8L * tables[i].length;
+                }
+            }
+            return total;
+        }
+    }
+
+    // Bloom mode: a fixed bit array sized for 'expectedUrls' and a target false-positive rate.
+    // Smallest of the three, but a new URL is wrongly reported as seen (and skipped) with about
+    // that probability, so it suits crawls where missing a few pages is acceptable.
+    // Adds of the same key are serialized by a lock stripe picked from its hash, so among
+    // threads adding the same key at once exactly one gets true.
+    static final class BloomVisitedSet implements VisitedSet {
+        private static final int STRIPES = 64;
+        private final Object[] locks = new Object[STRIPES];
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashes;
+        private final AtomicLong size = new AtomicLong();
+
+        BloomVisitedSet(long expectedUrls, double falsePositiveRate) {
+            // m = -n ln p / (ln 2)^2 bits and k = m / n * ln 2 hash functions.
+            long m = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) Math.max(1, (m + 63) >>> 6));
+            this.bitCount = 64L * bits.length();
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / expectedUrls * Math.log(2)));
+            for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+        }
+
+        // True if this call set any of the key's bits, i.e. the key was not (taken as) present.
+        // A new key is only refused when all of its bits were already set: a false positive.
+        @Override
+        public boolean add(String key) {
+            long fingerprint = fingerprint(key);
+            long h1 = fingerprint >>> 32;
+            long h2 = fingerprint & 0xFFFFFFFFL;
+            boolean added = false;
+            synchronized (locks[(int) (h1 & (STRIPES - 1))]) {
+                // Double hashing: bit i is h1 + i * h2 (mod m).
+                for (int i = 0; i < hashes; i++) {
+                    long bit = Math.floorMod(h1 + i * h2, bitCount);
+                    int word = (int) (bit >>> 6);
+                    long mask = 1L << bit;
+                    // Other stripes share the words, so set the bit with a CAS.
+                    long old = bits.get(word);
+                    while ((old & mask) == 0) {
+                        if (bits.compareAndSet(word, old, old | mask)) {
+                            added = true;
+                            break;
+                        }
+                        old = bits.get(word);
+                    }
+                }
+            }
+            if (added) size.incrementAndGet();
+            return added;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            long fingerprint = fingerprint(key);
+            long h1 = fingerprint >>> 32;
+            long h2 = fingerprint & 0xFFFFFFFFL;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public long size() {
+            return size.get();
+        }
+
+        @Override
+        public long memoryBytes() {
+            return 16 + 8L * bits.length();
+        }
+    }
+
+    // Thread factory for the crawl pools: daemon threads, so the program can exit automatically.
+    private static ThreadFactory daemonThreads() {
+        return daemonThreads(null);
+    }
+
+    // Same, but every thread is called 'name' (null keeps the default name).
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = name != null ? new Thread(r, name) : new Thread(r);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // 64-bit fingerprint of a key: FNV-1a over the chars, then a final avalanche mix. Never 0.
+    static long fingerprint(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    // Extract the lower-case hostname from a given URL ("http://News.Yahoo.com:80/us" -> "news.yahoo.com").
+    // A URL without "scheme://" (mailto:, javascript:, a relative link) has no host: "".
+    static String getHostName(String url) {
+        int start = hostStart(url);
+        if (start == NO_HOST) return "";
+        int end = hostEnd(url, start);
+        String host = url.substring(start, end);
+        return isLowerCase(url, start, end) ? host : host.toLowerCase(Locale.ROOT);
+    }
+
+    // Whether the URL's host is 'hostName' (lower case), checked in place without allocating.
+    static boolean isOnHost(String url, String hostName) {
+        int start = hostStart(url);
+        if (start == NO_HOST) return false;
+        int end = hostEnd(url, start);
+        return end - start == hostName.length() && url.regionMatches(true, start, hostName, 0, end - start);
+    }
+
+    // Dedup key of a URL: lower-case scheme and host, no default port (80 / 443), no user info,
+    // no trailing slash on the path and no #fragment. "HTTP://News.Yahoo.com:80/news/#top" and
+    // "http://news.yahoo.com/news" share the key "http://news.yahoo.com/news".
+    // A URL that is already in this form is returned as is, so the common case allocates nothing;
+    // so is a URL without "scheme://", which has no host to normalize.
+    static String canonicalKey(String url) {
+        int schemeEnd = schemeEnd(url);
+        if (schemeEnd == NO_HOST) return url;
+        int authorityStart = schemeEnd + 3;
+        int hostStart = hostStart(url);
+        int hostEnd = hostEnd(url, hostStart);
+        int authorityEnd = authorityEnd(url, authorityStart);
+
+        // Port: keep it only if it is not the default for the scheme.
+        boolean https = schemeEnd == 5 && url.regionMatches(true, 0, "https", 0, 5);
+        int portStart = hostEnd < authorityEnd && url.charAt(hostEnd) == ':' ? hostEnd + 1 : authorityEnd;
+        boolean defaultPort = isPort(url, portStart, authorityEnd, https ? 443 : 80);
+
+        // Path runs to '?' or '#'; drop its trailing slashes. The query runs to '#'.
+        int pathEnd = authorityEnd;
+        while (pathEnd < url.length() && url.charAt(pathEnd) != '?' && url.charAt(pathEnd) != '#') pathEnd++;
+        int trimmedPathEnd = pathEnd;
+        while (trimmedPathEnd > authorityEnd && url.charAt(trimmedPathEnd - 1) == '/') trimmedPathEnd--;
+        int queryEnd = pathEnd;
+        while (queryEnd < url.length() && url.charAt(queryEnd) != '#') queryEnd++;
+
+        boolean canonical = isLowerCase(url, 0, schemeEnd) && hostStart == authorityStart
+                && isLowerCase(url, hostStart, hostEnd) && (!defaultPort || hostEnd == authorityEnd)
+                && trimmedPathEnd == pathEnd && queryEnd == url.length();
+        if (canonical) return url;
+
+        StringBuilder key = new StringBuilder(url.length());
+        key.append(url, 0, schemeEnd + 3);
+        key.append(url, hostStart, hostEnd);
+        if (!defaultPort) key.append(url, hostEnd, authorityEnd);
+        key.append(url, authorityEnd, trimmedPathEnd);
+        key.append(url, pathEnd, queryEnd);
+        for (int i = 0; i < schemeEnd; i++) key.setCharAt(i, Character.toLowerCase(key.charAt(i)));
+        for (int i = schemeEnd + 3; i < schemeEnd + 3 + hostEnd - hostStart; i++) {
+            key.setCharAt(i, Character.toLowerCase(key.charAt(i)));
+        }
+        return key.toString();
+    }
+
+    // Returned by schemeEnd and hostStart for a URL without "scheme://".
+    private static final int NO_HOST = -1;
+
+    // Position of the "://" after the scheme, or NO_HOST.
+    private static int schemeEnd(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                if (url.startsWith("//", i + 1)) return i;
+                break;
+            }
+            if (c == '/' || c == '?' || c == '#') break;
+        }
+        return NO_HOST;
+    }
+
+    // End of the authority (user info, host and port): the first '/', '?' or '#' after the scheme.
+    private static int authorityEnd(String url, int from) {
+        int i = from;
+        while (i < url.length()) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') break;
+            i++;
+        }
+        return i;
+    }
+
+    // Start of the host: after "scheme://" and any "user:password@". NO_HOST if there is no "scheme://".
+    private static int hostStart(String url) {
+        int schemeEnd = schemeEnd(url);
+        if (schemeEnd == NO_HOST) return NO_HOST;
+        int start = schemeEnd + 3;
+        int end = authorityEnd(url, start);
+        for (int i = end - 1; i >= start; i--) {
+            if (url.charAt(i) == '@') return i + 1;
+        }
+        return start;
+    }
+
+    // End of the host: the ':' before the port, or the end of the authority. "[...]" is an IPv6 host.
+    private static int hostEnd(String url, int hostStart) {
+        int end = authorityEnd(url, hostStart);
+        if (hostStart < end && url.charAt(hostStart) == '[') {
+            int close = url.indexOf(']', hostStart);
+            return close < 0 || close >= end ? end : close + 1;
+        }
+        for (int i = hostStart; i < end; i++) {
+            if (url.charAt(i) == ':') return i;
+        }
+        return end;
+    }
+
+    // Whether url[from, to) is the decimal number 'port' (an empty port also counts as default).
+    private static boolean isPort(String url, int from, int to, int port) {
+        if (from == to) return true;
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9' || value > 65535) return false;
+            value = value * 10 + (c - '0');
+        }
+        return value == port;
+    }
+
+    private static boolean isLowerCase(String url, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c >= 'A' && c <= 'Z' || c >= 128 && Character.toLowerCase(c) != c) return false;
+        }
+        return true;
     }
 }
 
@@ -119,3 +1918,44 @@ public class WebCrawler {
 
 // Test Case 2 - Start with google.com:
 // Crawled URLs: [http://news.google.com]
+
+// Test Case 3 - Parallel crawl of yahoo.com:
+// Crawled URLs (sorted): [http://news.yahoo.com, http://news.yahoo.com/news, http://news.yahoo.com/news/topics/, http://news.yahoo.com/us]
+
+// Test Case 4 - Virtual-thread crawl of yahoo.com:
+// Crawled URLs (sorted): [http://news.yahoo.com, http://news.yahoo.com/news, http://news.yahoo.com/news/topics/, http://news.yahoo.com/us]
+
+// Test Case 5 - Polite crawl of yahoo.com and google.com:
+// Crawled URLs (sorted): [http://news.google.com, http://news.yahoo.com, http://news.yahoo.com/news, http://news.yahoo.com/news/topics/, http://news.yahoo.com/us]
+
+// Test Case 6 - Equivalent URLs are crawled once:
+// Crawled URLs: [http://news.yahoo.com, http://news.yahoo.com/news/]
+// Canonical key: http://news.yahoo.com/news
+
+// Test Case 6b - Links without a host are skipped:
+// Crawled URLs: [http://news.yahoo.com, http://news.yahoo.com/us]
+// Crawled URLs (parallel, sorted): [http://news.yahoo.com, http://news.yahoo.com/us]
+
+// Test Case 7 - Crawl with a compact visited set:
+// Crawled URLs (sorted): [http://news.yahoo.com, http://news.yahoo.com/news, http://news.yahoo.com/news/topics/, http://news.yahoo.com/us]
+
+// Test Case 8 - Resume a crawl from its journal:
+// Crawled URLs: [http://news.yahoo.com, http://news.yahoo.com/news, http://news.yahoo.com/us, http://news.yahoo.com/news/topics/]
+// Pages fetched after restart: 3
+// Torn journal, crawled URLs: [http://news.yahoo.com, http://news.yahoo.com/news, http://news.yahoo.com/us, http://news.yahoo.com/news/topics/]
+// Pages fetched after restart: 3
+// After a failed fetch, crawled URLs: [http://news.yahoo.com, http://news.yahoo.com/news, http://news.yahoo.com/us, http://news.yahoo.com/news/topics/]
+// Pages fetched after restart: 2
+
+// Test Case 9 - Caching and coalescing parser:
+// After two crawls: hits=4, misses=4, coalesced=0, evictions=0
+// Two concurrent calls: hits=0, misses=1, coalesced=1, evictions=0
+
+// Test Case 10 - Crawl metrics:
+// pages=4, errors=1, frontier=0, inFlight=0, getUrls timed=4, last error: fetch failed: http://news.yahoo.com/us
+
+// Test Case 11 - Prioritized crawl of yahoo.com:
+// Max depth 1: [http://news.yahoo.com, http://news.yahoo.com/us, http://news.yahoo.com/news]
+// Max 2 pages: [http://news.yahoo.com, http://news.yahoo.com/us]
+// Frontier of 1: [http://news.yahoo.com, http://news.yahoo.com/us], dropped=1
+// Bloom visited set: [http://news.yahoo.com, http://news.yahoo.com/us, http://news.yahoo.com/news, http://news.yahoo.com/news/topics/]